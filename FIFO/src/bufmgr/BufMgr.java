@@ -21,9 +21,8 @@ import bufmgr.FIFO;
  */
 public class BufMgr implements GlobalConst 
 {
-    /** @brief - number of buffers in buffer pool (15 and 42) */
-    //int numberOfBuffers = 42;
-     int numberOfBuffers = 15;
+    /** @brief - number of buffers in buffer pool */
+    int numberOfBuffers;
 
     /** Actual pool of pages */
     protected Page[] bufpool;
@@ -70,7 +69,7 @@ public class BufMgr implements GlobalConst
      */
     public BufMgr(int numbufs) 
     {   
-        numbufs = numberOfBuffers;
+        numberOfBuffers = numbufs;
 
         // Initialize bufferpool and frametable
         bufpool = new Page[numbufs];
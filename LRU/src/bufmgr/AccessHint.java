@@ -0,0 +1,23 @@
+package bufmgr;
+
+/**
+ * @brief How the caller expects to use a page it pins; see
+ * BufMgr.pinPage(PageId, Page, boolean, AccessHint). The hint only changes
+ * what happens to the frame once it is unpinned.
+ */
+public enum AccessHint
+{
+	/** @desc - no special knowledge; the replacement policy decides */
+	NORMAL,
+
+	/** @desc - part of a sequential scan; reused rarely, evicted oldest first */
+	SEQUENTIAL,
+
+	/** @desc - part of a loop over a set larger than the pool (e.g. the inner
+	 * relation of a nested-loop join); evicted most recently used first */
+	LOOP,
+
+	/** @desc - read exactly once; the first frame to be evicted */
+	ONCE
+
+} // enum AccessHint
@@ -0,0 +1,351 @@
+package bufmgr;
+import global.*;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+
+/**
+ * @brief Implements the Adaptive Replacement Cache Algorithm for page replacement
+ * (Megiddo and Modha). Resident pages seen once are in T1, pages seen at least
+ * twice are in T2, both in LRU order. B1 and B2 remember the page ids recently
+ * evicted from T1 and T2. A miss that hits B1 means T1 was too small and grows
+ * the target size p of T1; a miss that hits B2 shrinks it. The policy thus
+ * moves between recency and frequency on its own as the workload changes.
+ *
+ * Everything is driven from the Replacer callbacks. pickVictim does not know
+ * which page is about to be read, so the replacement step uses |T1| > p alone,
+ * and the adaptation of p happens when the new page is pinned right after.
+ */
+class Arc extends Replacer
+{
+	// Constants that describe status of page, the same values BufMgr uses
+	protected static final int AVAILABLE = 10;
+	protected static final int REFERENCED = 11;
+	protected static final int PINNED = 12;
+
+	/** @desc - the list a frame's page belongs to */
+	private static final byte NONE = 0;
+	private static final byte IN_T1 = 1;
+	private static final byte IN_T2 = 2;
+
+	private BufMgr mgrArg;
+
+	/** @desc - cache size, the number of frames */
+	private int c;
+	/** @desc - target size of T1, between 0 and c */
+	private int p;
+
+	/** @desc - frames holding no page, used before anything is evicted */
+	private FrameList free;
+	/** @desc - unpinned resident pages referenced once, LRU (head) to MRU (tail) */
+	private FrameList t1;
+	/** @desc - unpinned resident pages referenced more than once, LRU (head) to MRU (tail) */
+	private FrameList t2;
+	/** @desc - page ids recently evicted from T1, LRU first */
+	private LinkedHashSet<Integer> b1;
+	/** @desc - page ids recently evicted from T2, LRU first */
+	private LinkedHashSet<Integer> b2;
+
+	/** @desc - the page each frame holds as far as the replacer knows */
+	private int residentPid[];
+	/** @desc - the list each frame's page belongs to; pinned frames are kept off it */
+	private byte listOf[];
+	/** @desc - |T1| and |T2|, the resident pages of each list, pinned ones included */
+	private int t1Pages, t2Pages;
+	/** @desc - frames holding a page read ahead and not referenced since */
+	private boolean cold[];
+
+	public Arc(BufMgr mgrArg)
+	{
+		super(mgrArg);
+		this.mgrArg = mgrArg;
+
+		c = mgrArg.getNumBuffers();
+		p = 0;
+		int numFrames = frametab.length;
+		free = new FrameList(numFrames);
+		t1 = new FrameList(numFrames);
+		t2 = new FrameList(numFrames);
+		b1 = new LinkedHashSet<Integer>(c);
+		b2 = new LinkedHashSet<Integer>(c);
+		residentPid = new int[numFrames];
+		listOf = new byte[numFrames];
+		cold = new boolean[numFrames];
+		for (int i = 0; i < numFrames; i++)
+		{
+			frametab[i].state = AVAILABLE;
+			residentPid[i] = INVALID_PAGEID;
+			free.addLast(i);
+		}
+	}
+
+	/**
+	 * Notifies the replacer of a pined page.
+	 * A hit in T1 or T2 moves the page to T2. A newly loaded page found in a
+	 * ghost list adapts p and goes to T2; any other new page goes to T1.
+	 * The first pin of a page read ahead counts as loading it.
+	 * The frame is kept off its list until it is unpinned, and then becomes
+	 * the list's MRU page.
+	 * @param fdesc - frame descriptor object that contains details about a frame
+	 */
+	public void pinPage(FrameDesc fdesc)
+	{
+		int frameNo = fdesc.index;
+		int pid = fdesc.pageno.pid;
+		fdesc.state = PINNED;
+
+		if (residentPid[frameNo] == pid && !cold[frameNo])
+		{
+			forget(frameNo);
+			join(frameNo, IN_T2);
+			return;
+		}
+
+		forget(frameNo);
+		residentPid[frameNo] = pid;
+		free.remove(frameNo);
+		Integer key = Integer.valueOf(pid);
+		if (b1.contains(key))
+		{
+			p = Math.min(c, p + Math.max(b2.size() / b1.size(), 1));
+			b1.remove(key);
+			join(frameNo, IN_T2);
+		}
+		else if (b2.contains(key))
+		{
+			p = Math.max(0, p - Math.max(b1.size() / b2.size(), 1));
+			b2.remove(key);
+			join(frameNo, IN_T2);
+		}
+		else
+			join(frameNo, IN_T1);
+		trimGhosts();
+	}
+
+	/**
+	 * Notifies the replacer of a page read ahead. It is counted in T1, but
+	 * leaves p and the ghost lists alone until its first pin, and is not
+	 * remembered in B1 if it is evicted before that.
+	 * @param fdesc - frame descriptor object that contains details about a frame
+	 */
+	public void prefetchPage(FrameDesc fdesc)
+	{
+		int frameNo = fdesc.index;
+		fdesc.state = PINNED;
+		forget(frameNo);
+		residentPid[frameNo] = fdesc.pageno.pid;
+		free.remove(frameNo);
+		join(frameNo, IN_T1);
+		cold[frameNo] = true;
+		trimGhosts();
+	}
+
+	/**
+	 * Notifies the replacer of an unpinned page; it becomes the MRU page of
+	 * its list.
+	 */
+	public void unpinPage(FrameDesc fdesc)
+	{
+		int frameNo = fdesc.index;
+		if (fdesc.getPinCount() != 0)
+			return;
+
+		fdesc.state = REFERENCED;
+		if (listOf[frameNo] == IN_T1)
+			t1.addLast(frameNo);
+		else if (listOf[frameNo] == IN_T2)
+			t2.addLast(frameNo);
+	}
+
+	/**
+	 * Counts the pinned frame's page in a list; it goes on the list when it
+	 * is unpinned.
+	 * @param frameNo - the frame number
+	 * @param list - IN_T1 or IN_T2
+	 */
+	private void join(int frameNo, byte list)
+	{
+		listOf[frameNo] = list;
+		if (list == IN_T1)
+			t1Pages++;
+		else
+			t2Pages++;
+	}
+
+	/**
+	 * Takes the frame off its list and stops counting its page there.
+	 * @param frameNo - the frame number
+	 */
+	private void forget(int frameNo)
+	{
+		cold[frameNo] = false;
+		if (listOf[frameNo] == IN_T1)
+		{
+			t1.remove(frameNo);
+			t1Pages--;
+		}
+		else if (listOf[frameNo] == IN_T2)
+		{
+			t2.remove(frameNo);
+			t2Pages--;
+		}
+		listOf[frameNo] = NONE;
+	}
+
+	/**
+	 * Notifies the replacer of a free page.
+	 */
+	public void freePage(FrameDesc fdesc)
+	{
+		int frameNo = fdesc.index;
+		fdesc.state = AVAILABLE;
+		forget(frameNo);
+		Integer key = Integer.valueOf(residentPid[frameNo]);
+		b1.remove(key);
+		b2.remove(key);
+		residentPid[frameNo] = INVALID_PAGEID;
+		free.addFirst(frameNo);
+	}
+
+	/**
+	 * Notifies the replacer of a frame that joined the pool; it is empty.
+	 * The cache size c grows with the pool.
+	 */
+	public void addFrame(FrameDesc fdesc)
+	{
+		freePage(fdesc);
+		c = mgrArg.getNumBuffers();
+	}
+
+	/**
+	 * Notifies the replacer of a frame that left the pool. Its page is
+	 * forgotten, c shrinks with the pool, and p and the ghost lists are
+	 * brought back within the new bounds.
+	 */
+	public void removeFrame(FrameDesc fdesc)
+	{
+		int frameNo = fdesc.index;
+		fdesc.state = PINNED;
+		free.remove(frameNo);
+		forget(frameNo);
+		residentPid[frameNo] = INVALID_PAGEID;
+		c = mgrArg.getNumBuffers();
+		p = Math.min(p, c);
+		trimGhosts();
+	}
+
+	/**
+	 * Notifies the replacer of a new page.
+	 */
+	public void newPage(FrameDesc fdesc) { }
+
+	/**
+	 * Selects a free frame if there is one. Otherwise evicts the LRU page of
+	 * T1 when T1 is larger than its target p, and of T2 otherwise, and moves
+	 * its page id to the matching ghost list. Pinned frames are not on the
+	 * lists, so the LRU page is at the head.
+	 * @return the frame number return -1 if failed
+	 */
+	public int pickVictim()
+	{
+		int victim = free.removeFirst();
+
+		if (victim == FrameList.NIL)
+		{
+			if (t1Pages > p)
+			{
+				victim = t1.first();
+				if (victim == FrameList.NIL)
+					victim = t2.first();
+			}
+			else
+			{
+				victim = t2.first();
+				if (victim == FrameList.NIL)
+					victim = t1.first();
+			}
+			if (victim == FrameList.NIL)
+				return -1;
+
+			// a page read ahead and never used is not remembered
+			if (!cold[victim])
+			{
+				Integer key = Integer.valueOf(residentPid[victim]);
+				if (listOf[victim] == IN_T1)
+					b1.add(key);
+				else
+					b2.add(key);
+			}
+			forget(victim);
+			residentPid[victim] = INVALID_PAGEID;
+			trimGhosts();
+		}
+
+		frametab[victim].state = PINNED;
+		return victim;
+	}
+
+	/**
+	 * Lists the frames of the list pickVictim would take from next, then
+	 * those of the other list, LRU first.
+	 */
+	public int upcomingVictims(int out[], int n)
+	{
+		boolean t1First = t1Pages > p;
+		n = (t1First ? t1 : t2).copyTo(out, n, true);
+		return (t1First ? t2 : t1).copyTo(out, n, true);
+	}
+
+	/**
+	 * Keeps the directory within its bounds: |T1| + |B1| <= c and
+	 * |T1| + |T2| + |B1| + |B2| <= 2c, dropping the LRU ghost entries.
+	 */
+	private void trimGhosts()
+	{
+		while (!b1.isEmpty() && t1Pages + b1.size() > c)
+			removeOldest(b1);
+		while (!b2.isEmpty() && t1Pages + t2Pages + b1.size() + b2.size() > 2 * c)
+			removeOldest(b2);
+		while (!b1.isEmpty() && t1Pages + t2Pages + b1.size() + b2.size() > 2 * c)
+			removeOldest(b1);
+	}
+
+	/**
+	 * Removes the least recently added page id of a ghost list.
+	 */
+	private void removeOldest(LinkedHashSet<Integer> ghosts)
+	{
+		Iterator<Integer> oldest = ghosts.iterator();
+		oldest.next();
+		oldest.remove();
+	}
+
+	/**
+	 * Adds the cache size, the target size of T1 and the sizes of the lists.
+	 * @param out - receives one entry per figure
+	 */
+	public void getDetails(Map<String, Long> out)
+	{
+		out.put("c", (long) c);
+		out.put("p", (long) p);
+		out.put("t1", (long) t1Pages);
+		out.put("t2", (long) t2Pages);
+		out.put("b1", (long) b1.size());
+		out.put("b2", (long) b2.size());
+	}
+
+	/**
+	 * @desc - Prints out the name of the policy and the number of buffers being used
+	 * @param None
+	*/
+	public void printReplacerInfo()
+	{
+		System.out.println("+----------------------------------------+");
+		System.out.println("	The policy Being used is ARC ");
+		System.out.println("	Target T1 size (p): " + p + "  T1: " + t1Pages + "  T2: " + t2Pages);
+		System.out.println("+----------------------------------------+");
+		System.out.println("	The number of buffers is: " + mgrArg.getNumBuffers());
+		System.out.println("+----------------------------------------+");
+	}
+
+}
@@ -0,0 +1,88 @@
+package bufmgr;
+
+/*
+ * @brief The background writer: a daemon thread that wakes up every interval
+ * and has the buffer manager write back a batch of dirty unpinned frames, so
+ * that a miss usually finds a clean victim and does not write on the caller's
+ * thread first.
+ */
+class BackgroundWriter extends Thread
+{
+    /** @brief - the buffer manager whose frames are cleaned */
+    private BufMgr mgr;
+
+    /** @brief - pause between rounds, in milliseconds */
+    private long intervalMillis;
+
+    /** @brief - most pages written per round */
+    private int batchSize;
+
+    /** @brief - set to make the thread finish */
+    private boolean stopped = false;
+
+    /**
+     * @brief - guards stopped and wakes the thread early. The thread is never
+     * interrupted: an interrupt during FileChannel I/O would close the channel.
+     */
+    private final Object wakeup = new Object();
+
+    /**
+     * Constructs a writer; call start() to run it.
+     */
+    BackgroundWriter(BufMgr mgr, long intervalMillis, int batchSize)
+    {
+        super("bufmgr-bgwriter");
+        setDaemon(true);
+        this.mgr = mgr;
+        this.intervalMillis = intervalMillis;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * @brief - Cleans a batch of frames every interval until stopped.
+     */
+    public void run()
+    {
+        while(true)
+        {
+            synchronized(wakeup)
+            {
+                try
+                {
+                    if(!stopped)
+                        wakeup.wait(intervalMillis);
+                }
+
+                catch(InterruptedException e)
+                {
+                    // only shutdown wakes the thread, and not this way
+                }
+                if(stopped)
+                    return;
+            }
+            mgr.cleanFrames(batchSize);
+        }
+    }
+
+    /**
+     * @brief - Stops the thread and waits for it to finish its round.
+     */
+    void shutdown()
+    {
+        synchronized(wakeup)
+        {
+            stopped = true;
+            wakeup.notifyAll();
+        }
+        try
+        {
+            join();
+        }
+
+        catch(InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+} // class BackgroundWriter extends Thread
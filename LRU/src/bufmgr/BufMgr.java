@@ -1,41 +1,199 @@
 package bufmgr;
+import diskmgr.ChannelDiskMgr;
+import diskmgr.MappedDiskMgr;
 import global.GlobalConst;
 import global.Minibase;
 import global.Page;
 import global.PageId;
-import java.util.HashMap;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
+import java.util.Map;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.lang.management.ManagementFactory;
+import javax.management.JMException;
+import javax.management.ObjectName;
 
 /*
  * @brief The buffer manager reads disk pages into a mains memory page as needed. The
  * collection of main memory pages (called frames) used by the buffer manager
  * for this purpose is called the buffer pool. This is just an array of Page
  * objects.
+ *
+ * The buffer manager may be used by several threads at once. The page table is
+ * split into partitions with a lock each, every frame has a latch that is held
+ * while its page is read or written, pin counts are updated atomically, and the
+ * replacer is only locked for its own bookkeeping, never across disk I/O.
+ * Pins and unpins of pages already in the pool normally take no lock at all.
+ * Lock order: allocLock, then the buffer manager's monitor, then frame latch,
+ * then partition lock, then replacer, then ioLock. allocLock comes first
+ * because DiskMgr allocates and frees space through the space map pages,
+ * which it pins and unpins through Minibase.BufferManager while the lock is
+ * held. ioLock is held only around a DiskMgr read or write.
  */
 public class BufMgr implements GlobalConst 
 {
-    /** @brief - number of buffers in buffer pool (15 and 42) */
-    //int numberOfBuffers = 42;
-     int numberOfBuffers = 15;
+    /** @brief - number of buffers in buffer pool; frames 0 to numberOfBuffers - 1 are in use */
+    protected volatile int numberOfBuffers;
 
-    /** Actual pool of pages */
+    /** @brief - system property giving the most buffers the pool can grow to */
+    public static final String MAX_BUFFERS_PROPERTY = "bufmgr.maxbufs";
+
+    /** @brief - by default the pool can grow to this many times its first size */
+    public static final int DEFAULT_GROWTH = 4;
+
+    /** 
+     * Actual pool of pages. Each frame is a Page with its own heap array: a
+     * Page owns a whole byte[MINIBASE_PAGESIZE] that callers index from 0, so frames
+     * can not be slices of one shared (or off-heap) buffer. Frames not in use
+     * have no Page.
+     */
     protected Page[] bufpool;
 
-    /** Array of frame descriptors*/
+    /** 
+     * Array of frame descriptors, as many as the pool can grow to. Frames not
+     * in use are kept busy, so they are never pinned or claimed.
+     */
     protected FrameDesc[] frametab;
 
-    /** Maps current page numbers to frames*/
-    protected HashMap<Integer, FrameDesc> pagemap;
+    /** Maps current page numbers to frames, split into lock-striped partitions*/
+    protected PageTable[] pagemap;
+
+    /** @brief - one lock per page table partition */
+    protected Object[] pagemapLocks;
+
+    /** @brief - serializes DiskMgr page I/O, which seeks a shared file pointer;
+     * shared by every buffer manager, as they all use the one DiskMgr. Not
+     * needed when the DiskMgr does positional I/O (ChannelDiskMgr and
+     * MappedDiskMgr). */
+    protected static final Object ioLock = new Object();
+
+    /** @brief - serializes DiskMgr space allocation, for every buffer manager;
+     * DiskMgr pins space map pages while it is held, so it comes before
+     * every other lock */
+    protected static final Object allocLock = new Object();
+
+    /** 
+     * @brief - One bit per frame, set by lock-free pins of pages already in the
+     * pool. The replacer catches up with them the next time it is locked.
+     */
+    protected AtomicLongArray hits;
+
+    /** @brief - One bit per frame, set when a lock-free unpin drops the last pin */
+    protected AtomicLongArray releases;
+
+    /** @brief - Access clock, read by every hit and release to stamp its frame */
+    protected final AtomicLong touchClock = new AtomicLong();
+
+    /**
+     * @brief - Room for the pending hits and releases while they are put in
+     * order: their stamps, sorted, and (frame number << 1 | 1 for a release)
+     * in stamp order. Guarded by the replacer.
+     */
+    private long[] touchStamps, sortedStamps;
+    private int[] touchEvents, orderedEvents;
+
+    /** 
+     * @brief - One bit per frame holding changes not yet written to disk. Set
+     * by unpinPage, cleared by whoever then writes the page or drops it.
+     */
+    protected AtomicLongArray dirtyFrames;
+
+    /** @brief - number of bits set in dirtyFrames */
+    protected AtomicInteger numDirty = new AtomicInteger();
+
+    /** @brief - system property giving the number of page table partitions */
+    public static final String PARTITIONS_PROPERTY = "bufmgr.partitions";
 
     /** The replacement policy  */
     protected Replacer replacer;
 
+    /** 
+     * @brief - Unpinned frames whose last pin carried an access hint. They are
+     * evicted before the replacement policy is asked: ONCE frames first, then
+     * SEQUENTIAL frames oldest first, then LOOP frames newest first.
+     */
+    protected FrameList onceFrames;
+    protected FrameList seqFrames;
+    protected FrameList loopFrames;
+
+    /**
+     * @brief - Frames holding no page, most recently emptied first. A miss
+     * takes one of them before any hinted frame, so hints only choose among
+     * pages once the pool is full. Guarded by the replacer.
+     */
+    protected FrameList emptyFrames;
+
+    /** @brief - scans of more pages than this fraction of the pool use a ring */
+    public static final double SCAN_RING_THRESHOLD = 0.25;
+
+    /** @brief - largest ring handed out for a scan, in frames */
+    public static final int MAX_RING_SIZE = 16;
+
+    /** @brief - the background writer thread, null if it is not running; guarded by the buffer manager */
+    protected BackgroundWriter bgwriter;
+
+    /** @brief - next frame the background writer looks at */
+    protected int cleanHand = 0;
+
+    /** @brief - the background writer's list of upcoming victims, reused between rounds */
+    protected int[] cleanOrder;
+
+    /** @brief - how many batches ahead of the next miss the background writer looks */
+    protected static final int CLEAN_LOOKAHEAD = 4;
+
+    /** @brief - most pages flushAllPages writes (and latches) at once */
+    public static final int MAX_FLUSH_RUN = 64;
+
+    /** @brief - most pages pinRun reads (and latches) at once */
+    public static final int MAX_PIN_RUN = 64;
+
+    /** @brief - system property giving the background writer's pause in ms (0, the default, is off) */
+    public static final String BGWRITER_INTERVAL_PROPERTY = "bufmgr.bgwriter.interval";
+
+    /** @brief - system property giving the most pages the background writer writes per round */
+    public static final String BGWRITER_BATCH_PROPERTY = "bufmgr.bgwriter.batch";
+
+    /** @brief - default for bufmgr.bgwriter.batch */
+    public static final int DEFAULT_BGWRITER_BATCH = 8;
+
+    /** @brief - the read-ahead thread, null if read-ahead is off */
+    protected volatile ReadAhead readAhead;
+
+    /** @brief - system property giving the most pages read ahead at once per stream (0, the default, is off) */
+    public static final String READAHEAD_PROPERTY = "bufmgr.readahead";
+
+    /** @brief - system property that registers every buffer manager's MBean when it is built */
+    public static final String JMX_PROPERTY = "bufmgr.jmx";
+
+    /** @brief - the trace every pin, unpin, new run and free is recorded to, null if not tracing */
+    protected volatile TraceRecorder trace;
+
+    /** @brief - system property that turns on pin and disk latency histograms */
+    public static final String LATENCY_PROPERTY = "bufmgr.latency";
+
+    /** @brief - live counts published by the MBean; cheap enough for the hit path */
+    protected BufMgrMetrics metrics = new BufMgrMetrics(this);
+
+    /** @brief - name the MBean is registered under, null if it is not */
+    private ObjectName mbeanName;
+
+    /** @brief - numbers the MBeans, so every buffer manager gets its own name */
+    private static final AtomicInteger mbeanIds = new AtomicInteger();
+
+    /** @brief - name of the replacement policy in use (Lru, Mru, LruK, 2Q, ARC or FIFO) */
+    protected String replacerName;
+
+    /** @brief - system property used to choose the policy when none is given */
+    public static final String REPLACER_PROPERTY = "bufmgr.replacer";
+
     /** 
      * @brief - BHR Variables used in calculating Hit / Load Requests
     */
@@ -54,40 +212,150 @@ public class BufMgr implements GlobalConst
     protected final int maxPages = 100;
 
     /**
-     * @brief Array that keeps track of information about pages
-     * [0]PageNo, [1]Loads, [2]Hits, [3]Victim count
+     * @brief - The number of pages you want to print relative to hit count
      */
-    protected int[][] pageRefCount = new int[1000][4]; 
+    protected int kTopPages = 50;
 
     /**
-     * @brief - The number of pages you want to print relative to hit count
+     * @brief Loads, hits and evictions of each page, and the most hit pages,
+     * in the same amount of memory whatever the size of the database
      */
-    protected int kTopPages = 50;
+    protected PageStats pageStats = new PageStats(kTopPages);
 
     /**
-     * Constructs a buffer mamanger with the given settings.
+     * Constructs a buffer mamanger with the given settings. The replacement
+     * policy is read from the bufmgr.replacer system property (Lru by default).
      * @param numbufs number of buffers in the buffer pool
      */
     public BufMgr(int numbufs) 
+    {
+        this(numbufs, System.getProperty(REPLACER_PROPERTY, "Lru"));
+    }
+
+    /**
+     * Constructs a buffer mamanger with the given settings. The pool can grow
+     * to the number of buffers in the bufmgr.maxbufs system property
+     * (DEFAULT_GROWTH times numbufs by default).
+     * @param numbufs number of buffers in the buffer pool
+     * @param replacerArg name of the replacement policy (Lru, Mru, LruK, 2Q, ARC or FIFO)
+     * @throws IllegalArgumentException if the policy is unknown
+     */
+    public BufMgr(int numbufs, String replacerArg) 
+    {
+        this(numbufs, Integer.getInteger(MAX_BUFFERS_PROPERTY, DEFAULT_GROWTH * numbufs), replacerArg);
+    }
+
+    /**
+     * Constructs a buffer mamanger with the given settings.
+     * @param numbufs number of buffers in the buffer pool
+     * @param maxbufs most buffers the pool can grow to with resize
+     * @param replacerArg name of the replacement policy (Lru, Mru, LruK, 2Q, ARC or FIFO)
+     * @throws IllegalArgumentException if the policy is unknown or numbufs is not positive
+     */
+    public BufMgr(int numbufs, int maxbufs, String replacerArg) 
     {   
-        numbufs = numberOfBuffers;
+        if(numbufs < 1)
+            throw new IllegalArgumentException("Invalid number of buffers");
+        numberOfBuffers = numbufs;
+        int capacity = Math.max(numbufs, maxbufs);
 
-        // Initialize bufferpool and frametable
-        bufpool = new Page[numbufs];
-        frametab = new FrameDesc[numbufs];
+        // Initialize bufferpool and frametable; frames beyond numbufs wait, busy, for resize
+        bufpool = new Page[capacity];
+        frametab = new FrameDesc[capacity];
         for(int i = 0; i < frametab.length; i++)
         {
-            bufpool[i] = new Page();
             frametab[i] = new FrameDesc(i);
+            if(i < numbufs)
+                bufpool[i] = new Page();
+            else
+                frametab[i].tryClaim();
         }
 
-        // Initialize first pages to -1, since they arent used in calculations
-        for(int i = 0; i < 9; i++)
-            pageRefCount[i][0] = -1;
-    
         // Initializing page map and replacer here. 
-        pagemap = new HashMap<Integer, FrameDesc>(numbufs);
-        replacer = new Lru(this);  
+        int numParts = Integer.getInteger(PARTITIONS_PROPERTY, 2 * Runtime.getRuntime().availableProcessors());
+        numParts = Integer.highestOneBit(Math.max(1, Math.min(numParts, numbufs)));
+        pagemap = new PageTable[numParts];
+        pagemapLocks = new Object[numParts];
+        for(int i = 0; i < numParts; i++)
+        {
+            pagemap[i] = new PageTable(capacity);
+            pagemapLocks[i] = new Object();
+        }
+        hits = new AtomicLongArray((capacity + 63) / 64);
+        releases = new AtomicLongArray((capacity + 63) / 64);
+        touchStamps = new long[2 * capacity];
+        sortedStamps = new long[2 * capacity];
+        touchEvents = new int[2 * capacity];
+        orderedEvents = new int[2 * capacity];
+        dirtyFrames = new AtomicLongArray((capacity + 63) / 64);
+        onceFrames = new FrameList(capacity);
+        seqFrames = new FrameList(capacity);
+        loopFrames = new FrameList(capacity);
+        emptyFrames = new FrameList(capacity);
+        for(int i = 0; i < numberOfBuffers; i++)
+            emptyFrames.addLast(i);
+        replacer = createReplacer(replacerArg);
+        for(int i = numberOfBuffers; i < frametab.length; i++)
+            replacer.removeFrame(frametab[i]);
+
+        long interval = Long.getLong(BGWRITER_INTERVAL_PROPERTY, 0);
+        if(interval > 0)
+            startBackgroundWriter(interval, Integer.getInteger(BGWRITER_BATCH_PROPERTY, DEFAULT_BGWRITER_BATCH));
+
+        int maxWindow = Integer.getInteger(READAHEAD_PROPERTY, 0);
+        if(maxWindow > 0)
+            startReadAhead(maxWindow);
+
+        if(Boolean.getBoolean(JMX_PROPERTY))
+            registerMBean();
+    }
+
+    /**
+     * @brief - Constructs a buffer manager with no pool of its own, for
+     * subclasses that hand the work on to other buffer managers.
+     */
+    protected BufMgr()
+    {
+    }
+
+    /**
+     * @brief - Creates the replacement policy with the given name.
+     * @param replacerArg name of the replacement policy (Lru, Mru, LruK, 2Q, ARC or FIFO)
+     * @throws IllegalArgumentException if the policy is unknown
+     */
+    protected Replacer createReplacer(String replacerArg)
+    {
+        if(replacerArg.equalsIgnoreCase("Lru"))
+        {
+            replacerName = "Lru";
+            return new Lru(this);
+        }
+        if(replacerArg.equalsIgnoreCase("Mru"))
+        {
+            replacerName = "Mru";
+            return new Mru(this);
+        }
+        if(replacerArg.equalsIgnoreCase("LruK"))
+        {
+            replacerName = "LruK";
+            return new LruK(this);
+        }
+        if(replacerArg.equalsIgnoreCase("2Q") || replacerArg.equalsIgnoreCase("TwoQ"))
+        {
+            replacerName = "2Q";
+            return new TwoQ(this);
+        }
+        if(replacerArg.equalsIgnoreCase("ARC"))
+        {
+            replacerName = "ARC";
+            return new Arc(this);
+        }
+        if(replacerArg.equalsIgnoreCase("FIFO"))
+        {
+            replacerName = "FIFO";
+            return new FIFO(this);
+        }
+        throw new IllegalArgumentException("Unknown replacement policy: " + replacerArg);
     }
 
     /**
@@ -102,14 +370,28 @@ public class BufMgr implements GlobalConst
     public PageId newPage(Page firstpg, int run_size)
     {
         // Initialize BHR variables
-        totPageHits = 0;
-        totPageRequests = 0;
-        pageLoadHits = 0;
-        pageLoadRequests = 0;
+        resetBhrCounts();
 
         //Allocating set of new pages on disk using run size. 8/22/2023
-        PageId firstpgid = Minibase.DiskManager.allocate_page(run_size);
-        
+        PageId firstpgid;
+        synchronized(allocLock)
+        {
+            firstpgid = Minibase.DiskManager.allocate_page(run_size);
+        }
+        return pinNewRun(firstpgid, firstpg, run_size);
+    }
+
+    /**
+     * @brief - Pins the first page of a newly allocated run, giving the pages
+     * back to the disk if that fails.
+     * @return page id of the first new page, or null if it could not be pinned
+     */
+    PageId pinNewRun(PageId firstpgid, Page firstpg, int run_size)
+    {
+        TraceRecorder tr = trace;
+        if(tr != null)
+            tr.newRun(firstpgid.pid, run_size);
+
         try 
         {
             //pin the first page using pinpage() function using the id of firstpage, page firstpg and skipread = PIN_MEMCPY(true)
@@ -119,20 +401,41 @@ public class BufMgr implements GlobalConst
         catch (Exception e) 
         {
             //pinning failed so deallocating the pages from disk
-            for(int i=0; i < run_size; i++)
-            {   
-                firstpgid.pid += i;
-                Minibase.DiskManager.deallocate_page(firstpgid);
+            synchronized(allocLock)
+            {
+                for(int i=0; i < run_size; i++)
+                {   
+                    firstpgid.pid += i;
+                    Minibase.DiskManager.deallocate_page(firstpgid);
+                }
             }
             return null;
         }
         
         //notifying replacer
-        replacer.newPage(pagemap.get(Integer.valueOf(firstpgid.pid)));
+        FrameDesc tempfd = lookup(firstpgid.pid);
+        if(tempfd != null)
+        {
+            synchronized(replacer)
+            {
+                replacer.newPage(tempfd);
+            }
+        }
         
         //return the page id of the first page
         return firstpgid; 
     }
+
+    /**
+     * @brief - Sets the BHR counters back to zero.
+     */
+    protected void resetBhrCounts()
+    {
+        totPageHits = 0;
+        totPageRequests = 0;
+        pageLoadHits = 0;
+        pageLoadRequests = 0;
+    }
   
   /**
    * Deallocates a single page from disk, freeing it from the pool if needed.
@@ -141,27 +444,58 @@ public class BufMgr implements GlobalConst
    */
     public void freePage(PageId pageno) 
     {  
-        //the frame descriptor as the page is in the buffer pool
-        FrameDesc tempfd = pagemap.get(Integer.valueOf(pageno.pid));
-        
+        TraceRecorder tr = trace;
+        if(tr != null)
+            tr.free(pageno.pid);
+
+        FrameDesc tempfd = null;
+
         //the page is in the pool so it cannot be null.
+        synchronized(partitionLock(pageno.pid))
+        {
+            tempfd = lookup(pageno.pid);
+            if(tempfd != null)
+            {
+                //checking the pin count of frame descriptor; claiming the frame
+                //keeps a lock-free pin from sneaking in while it is taken apart
+                if(!tempfd.tryClaim())
+                    throw new IllegalArgumentException("Page currently pinned");
+                clearTouched(tempfd.index);
+
+                //remove page as it's pin count is 0, remove the page, updating its pin count and dirty status
+                partition(pageno.pid).remove(pageno.pid);
+                tempfd.pageno.pid = INVALID_PAGEID;
+                markClean(tempfd.index);
+                tempfd.release(0);
+            }
+        }
+
+        //updating the policy and notifying replacer
         if(tempfd != null)
         {
-            //checking the pin count of frame descriptor
-            if(tempfd.pincnt > 0)
-                throw new IllegalArgumentException("Page currently pinned");
-            
-            //remove page as it's pin count is 0, remove the page, updating its pin count and dirty status, the policy and notifying replacer.
-            pagemap.remove(Integer.valueOf(pageno.pid));
-            tempfd.pageno.pid = INVALID_PAGEID;
-            tempfd.pincnt = 0;
-            tempfd.dirty = false;
-            tempfd.state = Lru.AVAILABLE;
-            replacer.freePage(tempfd);
+            if(tempfd.takePrefetched())
+                readAheadWasted(pageno.pid);
+            synchronized(replacer)
+            {
+                tempfd.state = Lru.AVAILABLE;
+                setHint(tempfd, AccessHint.NORMAL);
+                replacer.freePage(tempfd);
+                emptyFrames.addFirst(tempfd.index);
+            }
+        }
+        else
+        {
+            synchronized(replacer)
+            {
+                replacer.freeEvictedPage(pageno.pid);
+            }
         }
 
         //deallocate the page from disk 
-        Minibase.DiskManager.deallocate_page(pageno);
+        synchronized(allocLock)
+        {
+            Minibase.DiskManager.deallocate_page(pageno);
+        }
     }
 
   /**
@@ -175,190 +509,1713 @@ public class BufMgr implements GlobalConst
    * @throws IllegalStateException if all pages are pinned (i.e. pool exceeded)
    */
     public void pinPage(PageId pageno, Page page, boolean skipRead) 
+    {
+        pinPage(pageno, page, skipRead, AccessHint.NORMAL);
+    }
+
+  /**
+   * @brief - Pins a disk page into the buffer pool, telling the buffer manager how
+   * the page is going to be used. Pages pinned with NORMAL are left to the
+   * replacement policy; see AccessHint for the others.
+   * @param pageno identifies the page to pin
+   * @param page holds contents of the page, either an input or output param
+   * @param skipRead PIN_MEMCPY (replace in pool); PIN_DISKIO (read the page in)
+   * @param hint how the page will be accessed
+   * @throws IllegalArgumentException if PIN_MEMCPY and the page is pinned
+   * @throws IllegalStateException if all pages are pinned (i.e. pool exceeded)
+   */
+    public void pinPage(PageId pageno, Page page, boolean skipRead, AccessHint hint) 
+    {
+        pinPage(pageno, page, skipRead, hint, null);
+    }
+
+  /**
+   * @brief - Pins a disk page into the buffer pool on behalf of a bulk scan. A hit
+   * is served as usual. On a miss the frame the ring used for an earlier page
+   * is recycled if that page is still there and unpinned; otherwise a victim
+   * is chosen as usual and joins the ring.
+   * @param pageno identifies the page to pin
+   * @param page holds contents of the page, either an input or output param
+   * @param skipRead PIN_MEMCPY (replace in pool); PIN_DISKIO (read the page in)
+   * @param ring the scan's ring, from getScanRing
+   * @throws IllegalArgumentException if PIN_MEMCPY and the page is pinned
+   * @throws IllegalStateException if all pages are pinned (i.e. pool exceeded)
+   */
+    public void pinPage(PageId pageno, Page page, boolean skipRead, BufferRing ring) 
+    {
+        pinPage(pageno, page, skipRead, AccessHint.NORMAL, ring);
+    }
+
+    /**
+     * @brief - Gets a ring for a sequential scan over the given number of pages,
+     * or null if the scan is small enough to go through the pool normally.
+     * @param numPages number of pages the scan will read
+     */
+    public BufferRing getScanRing(int numPages)
+    {
+        if(numPages <= getNumBuffers() * SCAN_RING_THRESHOLD)
+            return null;
+        return new BufferRing(Math.max(2, Math.min(MAX_RING_SIZE, getNumBuffers() / 8)));
+    }
+
+    /**
+     * @brief - Common body of the pinPage overloads. A hit only takes the lock of
+     * the page's partition. A miss claims a victim frame under its latch and
+     * does the disk I/O holding nothing but that latch, so other threads keep
+     * pinning and unpinning other pages meanwhile.
+     */
+    private void pinPage(PageId pageno, Page page, boolean skipRead, AccessHint hint, BufferRing ring) 
     {  
-        //the frame descriptor as the page is in the buffer pool 
-	    FrameDesc tempfd = pagemap.get(Integer.valueOf(pageno.pid));
-        
+        long start = metrics.startTiming();
+        BufMgrEvents.Pin event = new BufMgrEvents.Pin();
+        event.begin();
+        TraceRecorder tr = trace;
+        if(tr != null)
+            tr.pin(pageno.pid, skipRead, hint, ring);
+
         // Increment the number of total hits in the page ref
         if(pageno.pid > 8 )
         {
             totPageRequests++;
         }
 
-        // If the page is in the pool ...
-        if(tempfd != null)
-	    {
-            //if the page is in the pool and already pinned then by using PIN_MEMCPY(true) throws an exception "Page pinned PIN_MEMCPY not allowed" 
-            if(skipRead)
-                throw new IllegalArgumentException("Page pinned so PIN_MEMCPY not allowed");
-            
-            else
+        while(true)
+        {
+            // If the page is in the pool ...
+            if(pinIfResident(pageno, page, skipRead, hint))
             {
-                //else the page is in the pool and has not been pinned so incrementing the pincount and setting Policy status to pinned
-                tempfd.pincnt++;
-                tempfd.state = Lru.PINNED;
-                page.setPage(bufpool[tempfd.index]);
-                
-                // increment number of hits in buffer pool
-                if(pageno.pid > 8)
-                {
-                    totPageHits++;
-                    pageRefCount[pageno.pid][0] = pageno.pid;
-                    pageRefCount[pageno.pid][2] = pageRefCount[pageno.pid][2] + 1;
-                }
-                         
+                metrics.record(metrics.hitLatency, start);
+                emitPin(event, pageno, true);
                 return;
             }
-        }
 
-        // If the page is not in the pool ...
-        else
-        {   
-            // choose a page in the pool to evict
-            int i = replacer.pickVictim();
-          
-            // if buffer pool is full throws an Exception("Buffer pool exceeded")
-            if(i < 0)
-                throw new IllegalStateException("Buffer pool exceeded");
-                
-            tempfd = frametab[i];
+            // If the page is not in the pool, read it into a victim frame.
+            // This fails if another thread loaded the page first; then go
+            // round again and take the hit.
+            boolean loaded;
+            try
+            {
+                loaded = loadIntoVictim(pageno, page, skipRead, hint, ring, false, start);
+            }
 
-            if(pageno.pid > 8)
-            {   
-                pageLoadRequests++;
-                pageRefCount[pageno.pid][0] = pageno.pid;
-                pageRefCount[pageno.pid][1] = pageRefCount[pageno.pid][1] + 1;
-                pageRefCount[pageno.pid][3] = pageRefCount[pageno.pid][3] + 1;
+            catch(IllegalStateException e)
+            {
+                metrics.pinFailures.increment();
+                new BufMgrEvents.PinFailure().emit(pageno.pid, replacerName);
+                throw e;
             }
-            
-          
-            // if the victim is dirty writing it to disk 
-            if(tempfd.pageno.pid != -1)
+            if(loaded)
             {
-                pagemap.remove(Integer.valueOf(tempfd.pageno.pid));
-                if(tempfd.dirty)
-                    Minibase.DiskManager.write_page(tempfd.pageno, bufpool[i]); 
+                emitPin(event, pageno, false);
+                ReadAhead ra = readAhead;
+                if(ra != null && !skipRead)
+                    ra.access(pageno.pid, false);
+                return;
             }
-
-            //reading the page from disk to the page given and pinning it. 
-            if(skipRead)
-                bufpool[i].copyPage(page);
-                
-            else
-                Minibase.DiskManager.read_page(pageno, bufpool[i]);
-
-            // add page to buffer pool
-            page.setPage(bufpool[i]);           
-	    }
-
-        //updating frame descriptor and notifying to replacer
-        tempfd.pageno.pid = pageno.pid;
-        tempfd.pincnt = 1;
-        tempfd.dirty = false;
-        pagemap.put(Integer.valueOf(pageno.pid), tempfd);
-        tempfd.state =Lru.PINNED;
-        replacer.pinPage(tempfd);
-    }
-
-    /**
-     * Unpins a disk page from the buffer pool, decreasing its pin count.
-     * @param pageno identifies the page to unpin
-     * @param dirty UNPIN_DIRTY if the page was modified, UNPIN_CLEAN otherrwise
-     * @throws IllegalArgumentException if the page is not present or not pinned
-     */
-    public void unpinPage(PageId pageno, boolean dirty) 
-    {  
-        //the frame descriptor as the page is in the buffer pool 
-        FrameDesc tempfd = pagemap.get(Integer.valueOf(pageno.pid));
-	  
-	    //if page is not present an exception is thrown as "Page not present"
-        if(tempfd == null)
-            throw new IllegalArgumentException("Page not present");
-      
-         // if the page is present but not pinned an exception is thrown as "page not pinned"
-        if(tempfd.pincnt == 0)
-            throw new IllegalArgumentException("Page not pinned");
-      
-        else
-        {
-            // unpinning the page by decrementing pincount and updating the frame descriptor and notifying replacer
-            tempfd.pincnt--;
-            tempfd.dirty = dirty;
-            if(tempfd.pincnt== 0)
-                tempfd.state = Lru.REFERENCED;
-            replacer.unpinPage(tempfd);
-            return;
         }
     }
 
     /**
-     * Immediately writes a page in the buffer pool to disk, if dirty.
+     * @brief - Commits a pin event, if the recording wants it. The page is
+     * pinned, so its frame stays put while it is looked up.
      */
-    public void flushPage(PageId pageno) 
-    {  
-        for(int i = 0; i < frametab.length; i++)
+    private void emitPin(BufMgrEvents.Pin event, PageId pageno, boolean hit)
+    {
+        if(event.shouldCommit())
         {
-            //checking for pageid or id the pageid is the frame descriptor and the dirty status of the page
-            //writing down to disk if dirty status is true and updating dirty status of page to clean
-            if((pageno == null || frametab[i].pageno.pid == pageno.pid) && frametab[i].dirty)
+            FrameDesc tempfd;
+            synchronized(partitionLock(pageno.pid))
             {
-                Minibase.DiskManager.write_page(frametab[i].pageno, bufpool[i]);
-                frametab[i].dirty = false;
+                tempfd = lookup(pageno.pid);
             }
-        }   
-    }
-
-    /**
-     * Immediately writes all dirty pages in the buffer pool to disk.
-     */
-    public void flushAllPages() 
-    {
-        for(int i=0; i<frametab.length; i++) 
-            flushPage(frametab[i].pageno);
+            event.emit(pageno.pid, (tempfd == null) ? -1 : tempfd.index, hit, replacerName);
+        }
     }
 
     /**
-     * Gets the total number of buffer frames.
+     * @brief - The hit path: pins the page if it is already in the pool. The
+     * common case takes no lock at all: the page table is read optimistically,
+     * the pin is a compare-and-set on the frame's pin word, and the page id is
+     * checked again afterwards in case the frame was evicted meanwhile. The
+     * replacer hears about the hit later, through the hits bitmap.
+     * @return true if the page was found and pinned
      */
-    public int getNumBuffers() 
+    private boolean pinIfResident(PageId pageno, Page page, boolean skipRead, AccessHint hint)
     {
-        return bufpool.length;
-    }
+        FrameDesc tempfd = null;
 
-    /**
-     * Gets the total number of unpinned buffer frames.
-     */
-    public int getNumUnpinned() 
-    {
-        int numUnpinned = 0;
-        for(int i=0; i<frametab.length; i++) 
+        // the optimistic fast path
+        if(!skipRead)
         {
-            if(frametab[i].pincnt == 0)
-                numUnpinned++;
+            int i = partition(pageno.pid).find(pageno.pid);
+            if(i != PageTable.EMPTY && frametab[i].tryPin())
+            {
+                if(frametab[i].pageno.pid == pageno.pid)
+                    tempfd = frametab[i];
+                else if(frametab[i].unpin() == 0)
+                    touch(releases, i);
+            }
         }
-        return numUnpinned;
-    }
-    /**
+
+        // the locked slow path; loops while the page is still being read in
+        while(tempfd == null)
+        {
+            //the frame descriptor as the page is in the buffer pool 
+            FrameDesc busyfd = null;
+            synchronized(partitionLock(pageno.pid))
+            {
+                busyfd = lookup(pageno.pid);
+                if(busyfd == null)
+                    return false;
+
+                //if the page is in the pool and already pinned then by using PIN_MEMCPY(true) throws an exception "Page pinned PIN_MEMCPY not allowed" 
+                if(skipRead)
+                    throw new IllegalArgumentException("Page pinned so PIN_MEMCPY not allowed");
+
+                //else the page is in the pool so incrementing the pincount
+                if(busyfd.tryPin())
+                    tempfd = busyfd;
+            }
+
+            // wait for the thread reading the page in to let go of the frame
+            if(tempfd == null)
+            {
+                busyfd.latch.lock();
+                busyfd.latch.unlock();
+            }
+        }
+
+        page.setPage(bufpool[tempfd.index]);
+
+        //notifying replacer; a hint change also moves the frame between hint lists
+        if(hint != tempfd.hint)
+        {
+            synchronized(replacer)
+            {
+                setHint(tempfd, hint);
+            }
+        }
+        touch(hits, tempfd.index);
+
+        // the first pin of a page read ahead moves its stream along
+        if(tempfd.takePrefetched())
+        {
+            ReadAhead ra = readAhead;
+            if(ra != null)
+                ra.access(pageno.pid, true);
+        }
+
+        // increment number of hits in buffer pool
+        metrics.hits.increment();
+        if(pageno.pid > 8)
+        {
+            totPageHits++;
+            pageStats.hit(pageno.pid);
+        }
+        return true;
+    }
+
+    /**
+     * @brief - The miss path: evicts a victim and reads the page into its frame.
+     * @param prefetch true to read the page ahead: it is left unpinned, marked
+     * as read ahead, and not counted in the BHR; page is not used
+     * @param start when the pin started, for its latency; 0 if not timed
+     * @return false if another thread put the page into the pool first
+     * @throws IllegalStateException if all pages are pinned (i.e. pool exceeded)
+     * @throws IllegalArgumentException if the page is past the end of the database
+     */
+    private boolean loadIntoVictim(PageId pageno, Page page, boolean skipRead, AccessHint hint, BufferRing ring, boolean prefetch, long start)
+    {
+        FrameDesc tempfd = claimVictim(ring, true);
+        int i = tempfd.index;
+        boolean dirtyVictim;
+
+        // the frame is latched and busy; nobody else can pin it
+        try
+        {
+            if(pageno.pid > 8 && !prefetch)
+            {   
+                pageLoadRequests++;
+                pageStats.load(pageno.pid);
+            }
+
+            // if the victim is dirty writing it to disk
+            dirtyVictim = evictOldPage(tempfd);
+
+            // publish the new page; pins that find it wait on the latch until it is read
+            synchronized(partitionLock(pageno.pid))
+            {
+                if(lookup(pageno.pid) != null)
+                {
+                    releaseVictim(tempfd);
+                    return false;
+                }
+                tempfd.pageno.pid = pageno.pid;
+                partition(pageno.pid).put(pageno.pid, i);
+            }
+
+            //reading the page from disk to the page given and pinning it. 
+            if(skipRead)
+                bufpool[i].copyPage(page);
+
+            else
+            {
+                try
+                {
+                    readPage(pageno, i);
+                }
+
+                catch(IllegalArgumentException e)
+                {
+                    // not a page of the database; put the frame back empty
+                    synchronized(partitionLock(pageno.pid))
+                    {
+                        partition(pageno.pid).remove(pageno.pid);
+                    }
+                    releaseVictim(tempfd);
+                    throw e;
+                }
+                if(prefetch)
+                {
+                    // the replacer hears of it while it is busy, before any pin
+                    tempfd.markPrefetched();
+                    synchronized(replacer)
+                    {
+                        tempfd.state = Lru.PINNED;
+                        setHint(tempfd, AccessHint.NORMAL);
+                        replacer.prefetchPage(tempfd);
+                    }
+                }
+            }
+        }
+
+        finally
+        {
+            // the page is in; it is no longer busy and holds our pin, if any
+            if(tempfd.isBusy())
+                tempfd.release(prefetch ? 0 : 1);
+            tempfd.latch.unlock();
+        }
+
+        // a page read ahead is then unpinned, unless a pin that came since
+        // was replayed or is still holding it
+        if(prefetch)
+        {
+            synchronized(replacer)
+            {
+                drainTouched();
+                if(tempfd.getPinCount() == 0 && tempfd.state == Lru.PINNED)
+                {
+                    tempfd.state = Lru.REFERENCED;
+                    replacer.unpinPage(tempfd);
+                }
+            }
+            return true;
+        }
+
+        // add page to buffer pool
+        metrics.misses.increment();
+        page.setPage(bufpool[i]);
+
+        //updating frame descriptor and notifying to replacer
+        synchronized(replacer)
+        {
+            tempfd.state = Lru.PINNED;
+            setHint(tempfd, hint);
+            if(ring != null)
+                ring.record(i, pageno.pid);
+            replacer.pinPage(tempfd);
+        }
+        metrics.record(dirtyVictim ? metrics.dirtyMissLatency : metrics.cleanMissLatency, start);
+        return true;
+    }
+
+    /**
+     * @brief - Empties a claimed victim frame: writes its page to disk if
+     * dirty, then drops it from the page table. The old page stays in the
+     * page table until it is written, so a thread that wants it back waits
+     * on the latch instead of reading a stale copy from disk.
+     * @return true if the old page had to be written
+     */
+    private boolean evictOldPage(FrameDesc tempfd)
+    {
+        int oldpid = tempfd.pageno.pid;
+        if(oldpid == INVALID_PAGEID)
+            return false;
+
+        boolean dirty = markClean(tempfd.index);
+        if(dirty)
+            writePage(tempfd.pageno, tempfd.index);
+        synchronized(partitionLock(oldpid))
+        {
+            partition(oldpid).remove(oldpid);
+        }
+        tempfd.pageno.pid = INVALID_PAGEID;
+        metrics.evictions.increment();
+        new BufMgrEvents.Eviction().emit(oldpid, tempfd.index, dirty, replacerName);
+        if(oldpid > 8)
+            pageStats.victim(oldpid);
+        if(tempfd.takePrefetched())
+            readAheadWasted(oldpid);
+        return dirty;
+    }
+
+    /**
+     * Pins a run of pages with consecutive page numbers, such as one
+     * allocated by newPage. Pages already in the pool are pinned as by
+     * pinPage. Each stretch of pages that are not is read into victim frames
+     * claimed together, with one multi-page read if the DiskMgr has one.
+     * @param firstid identifies the first page of the run
+     * @param count number of pages to pin
+     * @param out holds the contents of the pages, in page number order
+     * @throws IllegalArgumentException if out is too short, or a page is not
+     * in the database
+     * @throws IllegalStateException if all pages are pinned (i.e. pool
+     * exceeded); no page of the run is left pinned
+     */
+    public void pinRun(PageId firstid, int count, Page[] out)
+    {
+        if(count < 0 || out.length < count)
+            throw new IllegalArgumentException("Invalid page run");
+
+        TraceRecorder tr = trace;
+        for(int k = 0; k < count; k++)
+        {
+            if(firstid.pid + k > 8)
+                totPageRequests++;
+            if(tr != null)
+                tr.pin(firstid.pid + k, PIN_DISKIO);
+        }
+
+        int k = 0;
+        try
+        {
+            while(k < count)
+            {
+                int pid = firstid.pid + k;
+                if(pinIfResident(new PageId(pid), out[k], PIN_DISKIO, AccessHint.NORMAL))
+                    k++;
+                else
+                    k += loadRun(pid, Math.min(count - k, MAX_PIN_RUN), out, k);
+            }
+        }
+
+        catch(RuntimeException e)
+        {
+            if(e instanceof IllegalStateException)
+            {
+                metrics.pinFailures.increment();
+                new BufMgrEvents.PinFailure().emit(firstid.pid + k, replacerName);
+            }
+
+            // give back the pages pinned so far
+            for(int j = 0; j < k; j++)
+                unpinPage(new PageId(firstid.pid + j), UNPIN_CLEAN);
+            throw e;
+        }
+    }
+
+    /**
+     * @brief - Reads a stretch of a run that is not in the pool: claims a
+     * victim for each page, up to the first page some other thread has put
+     * in the pool, then reads them all and pins them. Only the first victim
+     * is waited for; this thread holds the latches of the others, in no
+     * particular page order, so a victim whose latch is taken ends the
+     * stretch instead.
+     * @param out receives the pages from out[offset] on
+     * @return number of pages pinned, 0 if the first one is in the pool now
+     */
+    private int loadRun(int firstpid, int max, Page[] out, int offset)
+    {
+        FrameDesc[] run = new FrameDesc[max];
+        int n = 0;
+        boolean loaded = false;
+        try
+        {
+            for(; n < max; n++)
+            {
+                FrameDesc tempfd;
+                try
+                {
+                    tempfd = claimVictim(null, n == 0);
+                }
+
+                catch(IllegalStateException e)
+                {
+                    if(n == 0)
+                        throw e;
+                    break;
+                }
+                if(tempfd == null)
+                    break;
+
+                // if the victim is dirty writing it to disk, then publishing the new page
+                evictOldPage(tempfd);
+                int pid = firstpid + n;
+                synchronized(partitionLock(pid))
+                {
+                    if(lookup(pid) != null)
+                    {
+                        releaseVictim(tempfd);
+                        tempfd.latch.unlock();
+                        break;
+                    }
+                    tempfd.pageno.pid = pid;
+                    partition(pid).put(pid, tempfd.index);
+                }
+                run[n] = tempfd;
+            }
+            if(n == 0)
+                return 0;
+
+            Page[] pages = new Page[n];
+            for(int j = 0; j < n; j++)
+                pages[j] = bufpool[run[j].index];
+            if(n > 1 && Minibase.DiskManager instanceof ChannelDiskMgr)
+            {
+                BufMgrEvents.PageRead event = new BufMgrEvents.PageRead();
+                event.begin();
+                long start = metrics.startTiming();
+                ((ChannelDiskMgr) Minibase.DiskManager).read_pages(run[0].pageno, pages);
+                metrics.record(metrics.readLatency, start);
+                event.emit(run[0].pageno.pid, n, run[0].index, replacerName);
+            }
+            else
+            {
+                for(int j = 0; j < n; j++)
+                    readPage(run[j].pageno, run[j].index);
+            }
+            loaded = true;
+        }
+
+        finally
+        {
+            // the pages are in and hold our pins, or the frames go back empty
+            for(int j = 0; j < n; j++)
+            {
+                if(loaded)
+                    run[j].release(1);
+                else
+                {
+                    synchronized(partitionLock(run[j].pageno.pid))
+                    {
+                        partition(run[j].pageno.pid).remove(run[j].pageno.pid);
+                    }
+                    releaseVictim(run[j]);
+                }
+                run[j].latch.unlock();
+            }
+        }
+
+        //updating frame descriptors and notifying to replacer
+        for(int j = 0; j < n; j++)
+        {
+            int pid = firstpid + j;
+            metrics.misses.increment();
+            if(pid > 8)
+            {
+                pageLoadRequests++;
+                pageStats.load(pid);
+            }
+            out[offset + j].setPage(bufpool[run[j].index]);
+        }
+        synchronized(replacer)
+        {
+            for(int j = 0; j < n; j++)
+            {
+                run[j].state = Lru.PINNED;
+                setHint(run[j], AccessHint.NORMAL);
+                replacer.pinPage(run[j]);
+            }
+        }
+        return n;
+    }
+
+    /**
+     * @brief - Reads a page ahead, for the read-ahead thread: loads it unpinned
+     * into a victim frame, unless it is in the pool already. Read-ahead must
+     * not make a miss wait, so it gives up rather than write a dirty victim.
+     * @return 1 if the page was read, 0 if it was in the pool already, -1 if
+     * it was not read (no clean victim, or past the end of the database)
+     */
+    int readAheadPage(int pid)
+    {
+        synchronized(partitionLock(pid))
+        {
+            if(lookup(pid) != null)
+                return 0;
+        }
+        if(!nextVictimClean())
+            return -1;
+
+        try
+        {
+            return loadIntoVictim(new PageId(pid), null, PIN_DISKIO, AccessHint.NORMAL, null, true, 0) ? 1 : 0;
+        }
+
+        catch(IllegalStateException | IllegalArgumentException e)
+        {
+            return -1;
+        }
+    }
+
+    /**
+     * @brief - Tells whether the next victim, as far as the hinted lists and
+     * the replacer can tell, holds no unwritten changes. True if the replacer
+     * can not tell.
+     */
+    private boolean nextVictimClean()
+    {
+        int[] order = new int[1];
+        synchronized(replacer)
+        {
+            drainTouched();
+            if(!emptyFrames.isEmpty())
+                return true;
+            int n = onceFrames.copyTo(order, 0, true);
+            n = seqFrames.copyTo(order, n, true);
+            n = loopFrames.copyTo(order, n, false);
+            n = replacer.upcomingVictims(order, n);
+            return n == 0 || !isDirty(order[0]);
+        }
+    }
+
+    /**
+     * @brief - Reports a page read ahead that left the pool unused.
+     */
+    private void readAheadWasted(int pid)
+    {
+        ReadAhead ra = readAhead;
+        if(ra != null)
+            ra.wasted(pid);
+    }
+
+    /**
+     * @brief - Chooses a victim frame, latches it and marks it busy. If its page
+     * got pinned in the meantime the frame is let go and another victim is
+     * chosen.
+     * @param wait false to give up, rather than wait, if the victim's latch is
+     * taken; the frame is handed back to where it was chosen from
+     * @return the latched, busy frame, still holding its old page, or null if
+     * not waiting and the latch was taken
+     * @throws IllegalStateException if all pages are pinned (i.e. pool exceeded)
+     */
+    private FrameDesc claimVictim(BufferRing ring, boolean wait)
+    {
+        while(true)
+        {
+            // choose a page in the pool to evict: the scan's ring first, then an
+            // empty frame, and hinted frames only once the pool is full
+            int i;
+            boolean byReplacer = false;
+            synchronized(replacer)
+            {
+                drainTouched();
+                i = (ring != null) ? pickRingVictim(ring) : -1;
+                if(i < 0)
+                    i = emptyFrames.removeFirst();
+                if(i < 0)
+                    i = pickHintedVictim();
+                if(i < 0)
+                {
+                    i = replacer.pickVictim();
+                    byReplacer = true;
+                    if(i >= 0)
+                        emptyFrames.remove(i);
+                }
+            }
+
+            // if buffer pool is full throws an Exception("Buffer pool exceeded")
+            if(i < 0)
+                throw new IllegalStateException("Buffer pool exceeded");
+
+            // a frame resize is taking out of the pool is left to it
+            if(i >= numberOfBuffers)
+                continue;
+
+            FrameDesc tempfd = frametab[i];
+            if(!wait && !tempfd.latch.tryLock())
+            {
+                giveBack(tempfd);
+                return null;
+            }
+            if(wait)
+                tempfd.latch.lock();
+
+            // the claim fails if someone pinned the frame after the replacer
+            // last heard about it; their unpin will hand it back later
+            if(!tempfd.tryClaim())
+            {
+                tempfd.latch.unlock();
+                continue;
+            }
+            clearTouched(i);
+
+            // a frame taken outside the policy is taken out of the replacer while
+            // it loads, as pickVictim leaves its victims, so other misses do not
+            // choose it and wait on its latch; pinning the new page puts it back
+            if(!byReplacer)
+            {
+                synchronized(replacer)
+                {
+                    replacer.removeFrame(tempfd);
+                }
+            }
+            return tempfd;
+        }
+    }
+
+    /**
+     * @brief - Hands a chosen victim whose latch was taken back to where it
+     * was chosen from: an empty frame to the empty frames, any other to the
+     * replacer as unpinned again.
+     */
+    private void giveBack(FrameDesc tempfd)
+    {
+        if(tempfd.pageno.pid != INVALID_PAGEID)
+        {
+            touch(releases, tempfd.index);
+            return;
+        }
+        synchronized(replacer)
+        {
+            if(!tempfd.isBusy() && tempfd.pageno.pid == INVALID_PAGEID)
+                emptyFrames.addFirst(tempfd.index);
+        }
+    }
+
+    /**
+     * @brief - Gives back a claimed victim frame that turned out not to be needed.
+     * The frame is left empty and the replacer is told it was freed.
+     */
+    private void releaseVictim(FrameDesc tempfd)
+    {
+        tempfd.pageno.pid = INVALID_PAGEID;
+        markClean(tempfd.index);
+        tempfd.release(0);
+        synchronized(replacer)
+        {
+            tempfd.state = Lru.AVAILABLE;
+            replacer.freePage(tempfd);
+            emptyFrames.addFirst(tempfd.index);
+        }
+    }
+
+    /**
+     * @brief - Notes that a frame was pinned or unpinned without telling the
+     * replacer, stamped with the access clock so the replacer hears of it in
+     * the order it happened.
+     * @param bitmap hits or releases
+     */
+    private void touch(AtomicLongArray bitmap, int i)
+    {
+        long stamp = touchClock.incrementAndGet();
+        if(bitmap == hits)
+            frametab[i].hitStamp = stamp;
+        else
+            frametab[i].releaseStamp = stamp;
+        setBit(bitmap, i);
+    }
+
+    /**
+     * @brief - Sets a frame's bit in a bitmap. Lock-free, and skips the write
+     * when the bit is already set.
+     * @return true if the bit was clear
+     */
+    private static boolean setBit(AtomicLongArray bitmap, int i)
+    {
+        int w = i >>> 6;
+        long bit = 1L << (i & 63);
+        long bits = bitmap.get(w);
+        while((bits & bit) == 0)
+        {
+            if(bitmap.compareAndSet(w, bits, bits | bit))
+                return true;
+            bits = bitmap.get(w);
+        }
+        return false;
+    }
+
+    /**
+     * @brief - Forgets the pending hits and releases of a frame that was just
+     * claimed; they were for the page it held before.
+     */
+    private void clearTouched(int i)
+    {
+        long bit = 1L << (i & 63);
+        hits.getAndUpdate(i >>> 6, bits -> bits & ~bit);
+        releases.getAndUpdate(i >>> 6, bits -> bits & ~bit);
+    }
+
+    /**
+     * @brief - Brings the replacer up to date with the lock-free pins and
+     * unpins, in the order they happened: each frame hit since is reported as
+     * pinned, and each frame released since as unpinned if it still is, by
+     * their access clock stamps. A frame's stamps are those of its latest hit
+     * and release, and each clock reading is used once, so no two are equal.
+     * Busy frames are skipped; whoever claimed them reports them. Called
+     * holding the replacer.
+     */
+    private void drainTouched()
+    {
+        // collect the pending hits and releases; a stamp is written before
+        // its bit is set, so it is that of the event or of a later one
+        int n = 0;
+        for(int w = 0; w < hits.length(); w++)
+        {
+            long hitBits = (hits.get(w) == 0) ? 0 : hits.getAndSet(w, 0);
+            long releaseBits = (releases.get(w) == 0) ? 0 : releases.getAndSet(w, 0);
+
+            for(; hitBits != 0; hitBits &= hitBits - 1)
+            {
+                int i = (w << 6) + Long.numberOfTrailingZeros(hitBits);
+                touchStamps[n] = frametab[i].hitStamp;
+                touchEvents[n++] = i << 1;
+            }
+            for(; releaseBits != 0; releaseBits &= releaseBits - 1)
+            {
+                int i = (w << 6) + Long.numberOfTrailingZeros(releaseBits);
+                touchStamps[n] = frametab[i].releaseStamp;
+                touchEvents[n++] = (i << 1) | 1;
+            }
+        }
+        if(n == 0)
+            return;
+
+        // put them in stamp order
+        System.arraycopy(touchStamps, 0, sortedStamps, 0, n);
+        Arrays.sort(sortedStamps, 0, n);
+        for(int k = 0; k < n; k++)
+            orderedEvents[Arrays.binarySearch(sortedStamps, 0, n, touchStamps[k])] = touchEvents[k];
+
+        for(int k = 0; k < n; k++)
+        {
+            FrameDesc tempfd = frametab[orderedEvents[k] >>> 1];
+            if(tempfd.isBusy() || tempfd.pageno.pid == INVALID_PAGEID)
+                continue;
+
+            if((orderedEvents[k] & 1) == 0)
+            {
+                tempfd.state = Lru.PINNED;
+                setHint(tempfd, tempfd.hint);
+                replacer.pinPage(tempfd);
+            }
+            else if(tempfd.getPinCount() == 0)
+            {
+                tempfd.state = Lru.REFERENCED;
+                if(tempfd.hint == AccessHint.ONCE)
+                    onceFrames.addLast(tempfd.index);
+                else if(tempfd.hint == AccessHint.SEQUENTIAL)
+                    seqFrames.addLast(tempfd.index);
+                else if(tempfd.hint == AccessHint.LOOP)
+                    loopFrames.addLast(tempfd.index);
+                replacer.unpinPage(tempfd);
+            }
+        }
+    }
+
+    /**
+     * @brief - Gets the page table partition that holds the given page.
+     */
+    private PageTable partition(int pid)
+    {
+        return pagemap[pid & (pagemap.length - 1)];
+    }
+
+    /**
+     * @brief - Gets the lock guarding the partition that holds the given page.
+     */
+    private Object partitionLock(int pid)
+    {
+        return pagemapLocks[pid & (pagemap.length - 1)];
+    }
+
+    /**
+     * @brief - Finds the frame holding a page. The caller holds the partition lock.
+     * @param pid the page number
+     * @return the frame descriptor, or null if the page is not in the pool
+     */
+    private FrameDesc lookup(int pid)
+    {
+        int i = partition(pid).get(pid);
+        return (i == PageTable.EMPTY) ? null : frametab[i];
+    }
+
+    /**
+     * @brief - Takes the next victim among the unpinned hinted frames, if any.
+     * Called holding the replacer.
+     * @return victim frame number, or -1 if there is no hinted frame
+     */
+    private int pickHintedVictim()
+    {
+        int i = onceFrames.removeFirst();
+        if(i == FrameList.NIL)
+            i = seqFrames.removeFirst();
+        if(i == FrameList.NIL)
+            i = loopFrames.removeLast();
+        return i;
+    }
+
+    /**
+     * @brief - Takes the frame in the ring's current slot if it still holds the
+     * page the ring read into it and nobody has it pinned. Called holding the
+     * replacer.
+     * @return victim frame number, or -1 if the slot can not be recycled
+     */
+    private int pickRingVictim(BufferRing ring)
+    {
+        int i = ring.frames[ring.next];
+        if(i < 0 || i >= numberOfBuffers || frametab[i].getPinCount() > 0 || frametab[i].pageno.pid != ring.pids[ring.next])
+            return -1;
+
+        setHint(frametab[i], AccessHint.NORMAL);
+        return i;
+    }
+
+    /**
+     * @brief - Records the hint of a new pin; the frame is no longer a
+     * hinted victim while it is pinned. Called holding the replacer.
+     */
+    private void setHint(FrameDesc fdesc, AccessHint hint)
+    {
+        fdesc.hint = hint;
+        onceFrames.remove(fdesc.index);
+        seqFrames.remove(fdesc.index);
+        loopFrames.remove(fdesc.index);
+    }
+
+    /**
+     * Unpins a disk page from the buffer pool, decreasing its pin count.
+     * The caller holds a pin, so the frame can not be evicted under it and
+     * no lock is needed unless the optimistic page table read misses.
+     * @param pageno identifies the page to unpin
+     * @param dirty UNPIN_DIRTY if the page was modified, UNPIN_CLEAN otherrwise
+     * @throws IllegalArgumentException if the page is not present or not pinned
+     */
+    public void unpinPage(PageId pageno, boolean dirty) 
+    {  
+        TraceRecorder tr = trace;
+        if(tr != null)
+            tr.unpin(pageno.pid, dirty);
+
+        //the frame descriptor as the page is in the buffer pool 
+        FrameDesc tempfd = null;
+        int i = partition(pageno.pid).find(pageno.pid);
+        if(i != PageTable.EMPTY && frametab[i].pageno.pid == pageno.pid)
+            tempfd = frametab[i];
+        else
+        {
+            synchronized(partitionLock(pageno.pid))
+            {
+                tempfd = lookup(pageno.pid);
+            }
+        }
+
+        //if page is not present an exception is thrown as "Page not present"
+        if(tempfd == null)
+            throw new IllegalArgumentException("Page not present");
+
+        // if the page is present but not pinned an exception is thrown as "page not pinned",
+        // before the frame is marked dirty
+        if(tempfd.getPinCount() == 0)
+            throw new IllegalArgumentException("Page not pinned");
+
+        // the dirty bit is only ever set here, so a clean unpin by one user does
+        // not lose another's update; it is set before the pin is dropped so an
+        // evicting thread that claims the frame sees it
+        if(dirty)
+            markDirty(tempfd.index);
+
+        // unpinning the page by decrementing pincount and notifying replacer
+        int pincnt = tempfd.unpin();
+
+        // only an unpin racing with this one for the same pin gets here
+        if(pincnt < 0)
+            throw new IllegalArgumentException("Page not pinned");
+        if(pincnt == 0)
+        {
+            touch(releases, tempfd.index);
+
+            // the pool shrank past the frame while it was pinned
+            if(tempfd.index >= numberOfBuffers)
+                retireFrame(tempfd);
+        }
+    }
+
+    /**
+     * Immediately writes a page in the buffer pool to disk, if dirty.
+     * The frame is found through the page table.
+     */
+    public void flushPage(PageId pageno) 
+    {  
+        if(pageno == null)
+        {
+            flushAllPages();
+            return;
+        }
+
+        FrameDesc tempfd;
+        synchronized(partitionLock(pageno.pid))
+        {
+            tempfd = lookup(pageno.pid);
+        }
+
+        //writing down to disk if dirty status is true and updating dirty status of page to clean
+        if(tempfd != null && isDirty(tempfd.index))
+            flushFrame(tempfd, pageno.pid);
+    }
+
+    /**
+     * @brief - Writes one frame to disk if it is dirty and still holds the given
+     * page, holding its latch so the page can not be evicted or replaced while
+     * it is written.
+     */
+    private void flushFrame(FrameDesc tempfd, int pid)
+    {
+        tempfd.latch.lock();
+        try
+        {
+            if(tempfd.pageno.pid == pid)
+                writeIfDirty(tempfd);
+        }
+
+        finally
+        {
+            tempfd.latch.unlock();
+        }
+    }
+
+    /**
+     * @brief - Writes a run of frames holding consecutive pages, as collected by
+     * flushAllPages. The latches are taken in frame order, which does not
+     * depend on the page numbers a frame is seen holding, so two flushes can
+     * not deadlock; loadRun, the only other path holding several, never waits
+     * for a second one. Only the writes go in page order. Frames evicted or
+     * cleaned since they were collected are skipped, splitting the run.
+     * @param order (page number, frame number) keys, sorted
+     */
+    private void flushRun(long[] order, int start, int end)
+    {
+        FrameDesc[] run = new FrameDesc[end - start];
+        int[] latchOrder = new int[run.length];
+        for(int k = 0; k < run.length; k++)
+        {
+            run[k] = frametab[(int) order[start + k]];
+            latchOrder[k] = run[k].index;
+        }
+        Arrays.sort(latchOrder);
+
+        int locked = 0;
+        try
+        {
+            for(; locked < latchOrder.length; locked++)
+                frametab[latchOrder[locked]].latch.lock();
+
+            for(int k = 0; k < run.length; )
+            {
+                int j = k;
+                while(j < run.length && isDirty(run[j].index) && run[j].pageno.pid == (int) (order[start + j] >>> 32))
+                    j++;
+                if(j > k)
+                    writeRun(run, k, j);
+                k = Math.max(j, k + 1);
+            }
+        }
+
+        finally
+        {
+            for(int k = 0; k < locked; k++)
+                frametab[latchOrder[k]].latch.unlock();
+        }
+    }
+
+    /**
+     * @brief - Writes frames run[from..to), which hold consecutive pages and
+     * are latched, with one multi-page write if the DiskMgr has one.
+     */
+    private void writeRun(FrameDesc[] run, int from, int to)
+    {
+        Page[] pages = new Page[to - from];
+        for(int k = from; k < to; k++)
+        {
+            markClean(run[k].index);
+            pages[k - from] = bufpool[run[k].index];
+        }
+
+        if(Minibase.DiskManager instanceof ChannelDiskMgr)
+        {
+            BufMgrEvents.PageWrite event = new BufMgrEvents.PageWrite();
+            event.begin();
+            long start = metrics.startTiming();
+            ((ChannelDiskMgr) Minibase.DiskManager).write_pages(run[from].pageno, pages);
+            metrics.record(metrics.writeLatency, start);
+            event.emit(run[from].pageno.pid, to - from, run[from].index, replacerName);
+            metrics.writeBacks.add(to - from);
+        }
+        else
+        {
+            for(int k = from; k < to; k++)
+                writePage(run[k].pageno, run[k].index);
+        }
+    }
+
+    /**
+     * @brief - Writes a frame to disk if it is dirty. The caller holds its latch.
+     * @return true if the page was written
+     */
+    private boolean writeIfDirty(FrameDesc tempfd)
+    {
+        if(tempfd.pageno.pid == INVALID_PAGEID || !markClean(tempfd.index))
+            return false;
+        writePage(tempfd.pageno, tempfd.index);
+        return true;
+    }
+
+    /**
+     * @brief - One round of the background writer: writes dirty frames nobody
+     * has pinned, so misses find clean victims. The frames are taken in the
+     * order they will be evicted in, hinted frames first, as far as the
+     * replacer can tell, looking a few batches of victims ahead; the rest of
+     * the batch goes to a cleaning hand that sweeps as many frames of the
+     * frame table. Stops after batchSize writes.
+     * @return number of pages written
+     */
+    int cleanFrames(int batchSize)
+    {
+        int window = (int) Math.min(frametab.length, (long) CLEAN_LOOKAHEAD * batchSize);
+        if(cleanOrder == null || cleanOrder.length != window)
+            cleanOrder = new int[window];
+        int[] order = cleanOrder;
+        int hinted, n;
+        synchronized(replacer)
+        {
+            drainTouched();
+            hinted = onceFrames.copyTo(order, 0, true);
+            hinted = seqFrames.copyTo(order, hinted, true);
+            hinted = loopFrames.copyTo(order, hinted, false);
+            n = replacer.upcomingVictims(order, hinted);
+        }
+
+        int written = 0;
+        for(int k = 0; k < n && written < batchSize; k++)
+        {
+            if(cleanFrame(frametab[order[k]]))
+                written++;
+        }
+
+        // the replacer has no order to offer, or the next victims are clean
+        for(int k = 0; k < window && written < batchSize; k++)
+        {
+            if(cleanFrame(frametab[cleanHand]))
+                written++;
+            cleanHand = (cleanHand + 1) % frametab.length;
+        }
+        return written;
+    }
+
+    /**
+     * @brief - Writes a frame for the background writer if it is dirty and
+     * unpinned. A frame whose latch is taken is being evicted or flushed
+     * already and is skipped.
+     * @return true if the page was written
+     */
+    private boolean cleanFrame(FrameDesc tempfd)
+    {
+        if(!isDirty(tempfd.index) || tempfd.getPinCount() != 0 || !tempfd.latch.tryLock())
+            return false;
+
+        try
+        {
+            return tempfd.getPinCount() == 0 && writeIfDirty(tempfd);
+        }
+
+        finally
+        {
+            tempfd.latch.unlock();
+        }
+    }
+
+    /**
+     * Starts a background thread that keeps writing dirty unpinned pages to
+     * disk, so a miss seldom has to write its victim first. It is a daemon
+     * thread; stop it before the database is closed. Replaces a writer that
+     * is already running.
+     * @param intervalMillis pause between rounds, in milliseconds
+     * @param batchSize most pages written per round
+     */
+    public synchronized void startBackgroundWriter(long intervalMillis, int batchSize)
+    {
+        if(intervalMillis <= 0 || batchSize <= 0)
+            throw new IllegalArgumentException("Invalid background writer settings");
+        stopBackgroundWriter();
+        bgwriter = new BackgroundWriter(this, intervalMillis, batchSize);
+        bgwriter.start();
+    }
+
+    /**
+     * Stops the background writer, if any, and waits for its round to end.
+     */
+    public synchronized void stopBackgroundWriter()
+    {
+        if(bgwriter != null)
+        {
+            bgwriter.shutdown();
+            bgwriter = null;
+        }
+    }
+
+    /**
+     * Starts sequential read-ahead. Runs of pins of consecutive pages that
+     * miss are noticed, and the pages that follow are read into the pool by a
+     * daemon thread before they are asked for. Pages read ahead are not
+     * counted in the BHR, so the pins they turn into hits raise it. Replaces
+     * a read-ahead that is already running.
+     * @param maxWindow most pages read ahead at once per stream; at most a
+     * quarter of the pool is used
+     */
+    public synchronized void startReadAhead(int maxWindow)
+    {
+        if(maxWindow <= 0)
+            throw new IllegalArgumentException("Invalid read-ahead window");
+        stopReadAhead();
+        ReadAhead ra = new ReadAhead(this, Math.min(maxWindow, Math.max(1, getNumBuffers() / 4)));
+        useReadAhead(ra);
+        ra.start();
+    }
+
+    /**
+     * Stops read-ahead and prefetching, if on, and waits for the page being
+     * read. Prefetch requests still waiting are dropped.
+     */
+    public synchronized void stopReadAhead()
+    {
+        ReadAhead ra = readAhead;
+        if(ra != null)
+        {
+            useReadAhead(null);
+            ra.shutdown();
+        }
+    }
+
+    /**
+     * Asks for pages to be read into the pool in the background, e.g. by a
+     * scan that knows which pages it will read next. The pages are read in
+     * the given order on the read-ahead thread, which is started (following
+     * no streams) if read-ahead is off. They are left unpinned, and pages
+     * already in the pool are left alone, their place in the replacement
+     * order included. Reading a page is not a use of it: the policy counts
+     * its first pin as its first reference. This is only a hint: pages are not read when the next
+     * victim is dirty or the thread is far behind.
+     * @param pageids the pages to read
+     */
+    public void prefetch(PageId... pageids)
+    {
+        int[] pids = new int[pageids.length];
+        for(int k = 0; k < pids.length; k++)
+            pids[k] = pageids[k].pid;
+        prefetcher().prefetch(pids);
+    }
+
+    /**
+     * @brief - Gets the read-ahead thread, starting one that only reads the
+     * pages asked for if read-ahead is off.
+     */
+    private synchronized ReadAhead prefetcher()
+    {
+        if(readAhead == null)
+        {
+            ReadAhead ra = new ReadAhead(this, 0);
+            useReadAhead(ra);
+            ra.start();
+        }
+        return readAhead;
+    }
+
+    /**
+     * Starts recording every pin, unpin, new run and freed page to a trace
+     * that TraceReplayer can run again, e.g. against another policy or pool
+     * size. A trace already being recorded is stopped first.
+     * @param out where the trace goes; closed by stopTrace
+     * @throws IllegalStateException if the trace header can not be written
+     */
+    public synchronized void startTrace(OutputStream out)
+    {
+        stopTrace();
+        try
+        {
+            useTrace(new TraceRecorder(out));
+        }
+
+        catch(IOException e)
+        {
+            throw new IllegalStateException("Could not start the trace", e);
+        }
+    }
+
+    /**
+     * Stops recording the trace, if one is being recorded, and closes it.
+     * @throws IllegalStateException if part of the trace could not be written
+     */
+    public synchronized void stopTrace()
+    {
+        TraceRecorder tr = trace;
+        if(tr == null)
+            return;
+        useTrace(null);
+        try
+        {
+            tr.close();
+        }
+
+        catch(IOException e)
+        {
+            throw new IllegalStateException("Could not write the trace", e);
+        }
+    }
+
+    /**
+     * @brief - Installs the trace the pin, unpin, new and free paths record to.
+     */
+    protected void useTrace(TraceRecorder tr)
+    {
+        trace = tr;
+    }
+
+    /**
+     * @brief - Installs the read-ahead thread the pin paths report to.
+     */
+    protected void useReadAhead(ReadAhead ra)
+    {
+        readAhead = ra;
+    }
+
+    /**
+     * Gets the number of pages read ahead or prefetched since read-ahead or
+     * prefetching was started.
+     */
+    public long getNumPrefetched()
+    {
+        ReadAhead ra = readAhead;
+        return (ra == null) ? 0 : ra.getNumRead();
+    }
+
+    /**
+     * Gets the number of pages read ahead that were pinned afterwards.
+     */
+    public long getNumUsefulPrefetches()
+    {
+        ReadAhead ra = readAhead;
+        return (ra == null) ? 0 : ra.getNumUseful();
+    }
+
+    /**
+     * Gets the number of pages read ahead that were evicted or freed unused.
+     */
+    public long getNumWastedPrefetches()
+    {
+        ReadAhead ra = readAhead;
+        return (ra == null) ? 0 : ra.getNumWasted();
+    }
+
+    /**
+     * Gets the pages with the most hits, most hit first. The counts are
+     * estimates, and may be a little high.
+     * @param k the most pages to return
+     * @return one row per page: { page number, loads, hits, evictions }
+     */
+    public int[][] getTopPages(int k)
+    {
+        return pageStats.topPages(k);
+    }
+
+    /**
+     * Gets the live counts of this buffer manager, as published by its MBean.
+     */
+    public BufMgrMXBean getMetrics()
+    {
+        return metrics;
+    }
+
+    /**
+     * Registers this buffer manager's MBean with the platform MBean server,
+     * under bufmgr:type=BufMgr,id=n, unless it is registered already.
+     * @return the name it is registered under
+     * @throws IllegalStateException if the MBean server refuses it
+     */
+    public synchronized ObjectName registerMBean()
+    {
+        if(mbeanName == null)
+        {
+            try
+            {
+                ObjectName name = new ObjectName("bufmgr:type=BufMgr,id=" + mbeanIds.incrementAndGet());
+                ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, name);
+                mbeanName = name;
+            }
+
+            catch(JMException e)
+            {
+                throw new IllegalStateException("Could not register the MBean", e);
+            }
+        }
+        return mbeanName;
+    }
+
+    /**
+     * Unregisters this buffer manager's MBean, if it is registered, so a
+     * buffer manager that is no longer used can be collected.
+     */
+    public synchronized void unregisterMBean()
+    {
+        if(mbeanName == null)
+            return;
+        try
+        {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(mbeanName);
+        }
+
+        catch(JMException e)
+        {
+            // already gone
+        }
+        mbeanName = null;
+    }
+
+    /**
+     * @brief - Reads a page from disk into a frame. A plain DiskMgr seeks a shared file
+     * pointer, so its I/O is serialized; positional I/O needs no lock.
+     */
+    private void readPage(PageId pageno, int frame)
+    {
+        BufMgrEvents.PageRead event = new BufMgrEvents.PageRead();
+        event.begin();
+        Page page = bufpool[frame];
+        long start = metrics.startTiming();
+        if(Minibase.DiskManager instanceof ChannelDiskMgr)
+            Minibase.DiskManager.read_page(pageno, page);
+        else
+        {
+            synchronized(ioLock)
+            {
+                Minibase.DiskManager.read_page(pageno, page);
+            }
+        }
+        metrics.record(metrics.readLatency, start);
+        event.emit(pageno.pid, 1, frame, replacerName);
+    }
+
+    /**
+     * @brief - Writes a frame's page to disk, serialized like readPage.
+     */
+    private void writePage(PageId pageno, int frame)
+    {
+        metrics.writeBacks.increment();
+        BufMgrEvents.PageWrite event = new BufMgrEvents.PageWrite();
+        event.begin();
+        Page page = bufpool[frame];
+        long start = metrics.startTiming();
+        if(Minibase.DiskManager instanceof ChannelDiskMgr)
+            Minibase.DiskManager.write_page(pageno, page);
+        else
+        {
+            synchronized(ioLock)
+            {
+                Minibase.DiskManager.write_page(pageno, page);
+            }
+        }
+        metrics.record(metrics.writeLatency, start);
+        event.emit(pageno.pid, 1, frame, replacerName);
+    }
+
+    /**
+     * Immediately writes all dirty pages in the buffer pool to disk.
+     */
+    public void flushAllPages() 
+    {
+        // collect the dirty frames from the dirty bitmap, keyed (page number,
+        // frame number) so that sorting puts them in disk order
+        long[] order = new long[Math.max(numDirty.get(), 16)];
+        int n = 0;
+        for(int w = 0; w < dirtyFrames.length(); w++)
+        {
+            for(long bits = dirtyFrames.get(w); bits != 0; bits &= bits - 1)
+            {
+                int i = (w << 6) + Long.numberOfTrailingZeros(bits);
+                int pid = frametab[i].pageno.pid;
+                if(pid == INVALID_PAGEID)
+                    continue;
+                if(n == order.length)
+                    order = Arrays.copyOf(order, 2 * n);
+                order[n++] = ((long) pid << 32) | i;
+            }
+        }
+        Arrays.sort(order, 0, n);
+
+        // write each run of consecutive page numbers in one go
+        for(int start = 0; start < n; )
+        {
+            int end = start + 1;
+            while(end < n && end - start < MAX_FLUSH_RUN && (int) (order[end] >>> 32) == (int) (order[end - 1] >>> 32) + 1)
+                end++;
+            flushRun(order, start, end);
+            start = end;
+        }
+
+        // mapped writes only reach the page cache until forced
+        if(Minibase.DiskManager instanceof MappedDiskMgr)
+            ((MappedDiskMgr) Minibase.DiskManager).sync();
+    }
+
+    /**
+     * Gets the number of dirty buffer frames, e.g. to throttle writers or
+     * decide when to flush.
+     */
+    public int getNumDirty()
+    {
+        return numDirty.get();
+    }
+
+    /**
+     * @brief - Tells whether a frame holds changes not yet written to disk.
+     */
+    private boolean isDirty(int i)
+    {
+        return (dirtyFrames.get(i >>> 6) & (1L << (i & 63))) != 0;
+    }
+
+    /**
+     * @brief - Sets a frame's dirty bit, counting it if it was clean.
+     */
+    private void markDirty(int i)
+    {
+        if(setBit(dirtyFrames, i))
+            numDirty.incrementAndGet();
+    }
+
+    /**
+     * @brief - Clears a frame's dirty bit. Whoever clears it writes the page.
+     * @return true if the frame was dirty
+     */
+    private boolean markClean(int i)
+    {
+        int w = i >>> 6;
+        long bit = 1L << (i & 63);
+        long bits = dirtyFrames.get(w);
+        while((bits & bit) != 0)
+        {
+            if(dirtyFrames.compareAndSet(w, bits, bits & ~bit))
+            {
+                numDirty.decrementAndGet();
+                return true;
+            }
+            bits = dirtyFrames.get(w);
+        }
+        return false;
+    }
+
+    /**
+     * Gets the total number of buffer frames.
+     */
+    public int getNumBuffers() 
+    {
+        return numberOfBuffers;
+    }
+
+    /**
+     * Changes the number of buffer frames while the pool is in use, without
+     * waiting for any pin. Growing hands empty frames to the replacer.
+     * Shrinking takes the last frames out of the replacer and empties the
+     * unpinned ones, writing their pages first if dirty; a frame whose page
+     * is pinned keeps it until its last unpin, which retires the frame.
+     * Growing back over a frame still retiring stops short of it.
+     * @param numbufs the new number of buffers, from 1 to the most the pool
+     * was built to grow to
+     * @return the number of buffers the pool has now; less than numbufs only
+     * when growing over frames whose pages are still pinned
+     * @throws IllegalArgumentException if numbufs is out of range
+     */
+    public synchronized int resize(int numbufs)
+    {
+        if(numbufs < 1 || numbufs > frametab.length)
+            throw new IllegalArgumentException("Invalid number of buffers");
+
+        int oldbufs = numberOfBuffers;
+        if(numbufs > oldbufs)
+        {
+            // a frame left by an earlier shrink can only come back empty
+            for(int i = oldbufs; i < numbufs; i++)
+            {
+                if(bufpool[i] != null && !dropFrame(frametab[i]))
+                {
+                    numbufs = i;
+                    break;
+                }
+            }
+
+            for(int i = oldbufs; i < numbufs; i++)
+            {
+                if(bufpool[i] == null)
+                    bufpool[i] = new Page();
+            }
+
+            // the frames are empty, and nobody can claim one until the replacer has it
+            synchronized(replacer)
+            {
+                numberOfBuffers = numbufs;
+                for(int i = oldbufs; i < numbufs; i++)
+                {
+                    frametab[i].pageno.pid = INVALID_PAGEID;
+                    frametab[i].hint = AccessHint.NORMAL;
+                    frametab[i].release(0);
+                    replacer.addFrame(frametab[i]);
+                    emptyFrames.addFirst(i);
+                }
+            }
+            return numbufs;
+        }
+
+        // no new victims from here on; the frames may still be pinned
+        synchronized(replacer)
+        {
+            drainTouched();
+            numberOfBuffers = numbufs;
+            for(int i = numbufs; i < oldbufs; i++)
+            {
+                setHint(frametab[i], AccessHint.NORMAL);
+                emptyFrames.remove(i);
+                replacer.removeFrame(frametab[i]);
+            }
+        }
+
+        // pinned frames are retired by their last unpin
+        for(int i = oldbufs - 1; i >= numbufs; i--)
+            dropFrame(frametab[i]);
+        return numbufs;
+    }
+
+    /**
+     * @brief - Retires a frame that left the pool while its page was pinned,
+     * once the last pin is gone. Called after an unpin drops its pin count
+     * to 0.
+     */
+    private synchronized void retireFrame(FrameDesc tempfd)
+    {
+        if(tempfd.index >= numberOfBuffers && bufpool[tempfd.index] != null)
+            dropFrame(tempfd);
+    }
+
+    /**
+     * @brief - Empties a frame leaving the pool and keeps it busy for good,
+     * writing its page first if dirty. Called holding the buffer manager.
+     * @return false if its page is pinned; it is left as it is
+     */
+    private boolean dropFrame(FrameDesc tempfd)
+    {
+        tempfd.latch.lock();
+        if(!tempfd.tryClaim())
+        {
+            tempfd.latch.unlock();
+            return false;
+        }
+
+        try
+        {
+            clearTouched(tempfd.index);
+            evictOldPage(tempfd);
+        }
+
+        finally
+        {
+            tempfd.latch.unlock();
+        }
+        bufpool[tempfd.index] = null;
+
+        // pins made before the claim may have handed the frame back to the replacer
+        synchronized(replacer)
+        {
+            setHint(tempfd, AccessHint.NORMAL);
+            emptyFrames.remove(tempfd.index);
+            replacer.removeFrame(tempfd);
+        }
+        return true;
+    }
+
+    /**
+     * Gets the total number of unpinned buffer frames.
+     */
+    public int getNumUnpinned() 
+    {
+        int numUnpinned = 0;
+        int numbufs = numberOfBuffers;
+        for(int i=0; i<numbufs; i++) 
+        {
+            if(frametab[i].getPinCount() == 0)
+                numUnpinned++;
+        }
+        return numUnpinned;
+    }
+
+    /**
+     * Gets the number of buffer frames holding no page.
+     */
+    public int getNumFree()
+    {
+        int numFree = 0;
+        int numbufs = numberOfBuffers;
+        for(int i = 0; i < numbufs; i++)
+        {
+            if(frametab[i].pageno.pid == INVALID_PAGEID && frametab[i].getPinCount() == 0)
+                numFree++;
+        }
+        return numFree;
+    }
+    /**
+     * @brief - Prints the replacement policy in use, once it has caught up
+     * with the pins made since it was last locked.
+     */
+    protected void printReplacerInfo()
+    {
+        synchronized(replacer)
+        {
+            drainTouched();
+            replacer.printReplacerInfo();
+        }
+    }
+
+    /**
+     * @brief - Adds the replacement policy's own figures, once it has caught
+     * up with the pins made since it was last locked.
+     */
+    protected void replacerDetails(Map<String, Long> out)
+    {
+        synchronized(replacer)
+        {
+            drainTouched();
+            replacer.getDetails(out);
+        }
+    }
+
+    /**
      * @breif Prints our information about the BHR, Page HIts, Load Requests, Replacer used,
      * and it outputs this infomration to a file and in the console.
      */
     public void printBhrAndRefCount()
     {
         /** Prints the replcer being used */
-        replacer.printReplacerInfo();
+        printReplacerInfo();
         
-        // Sort the 2d array first
-        Arrays.sort(pageRefCount, (a, b) -> Integer.compare(b[2],a[2])); //decreasing order
+        // Take the most hit pages, already sorted; the live counts are left alone
+        int[][] topPages = pageStats.topPages(kTopPages);
         
         // Fix page reference counts an calculate BHR
-        pageLoadRequests = pageLoadRequests - 1;
-        aggregateBHR = ( (double)totPageHits / (double)pageLoadRequests );
+        int loadRequests = pageLoadRequests - 1;
+        aggregateBHR = ( (double)totPageHits / (double)loadRequests );
             
         //print counts:
         System.out.println("+----------------------------------------+");
         System.out.println("Aggregate Page Hits: "+ totPageHits);
         System.out.println("+----------------------------------------+");
-        System.out.println("Aggregate Page Loads: "+ pageLoadRequests);
+        System.out.println("Aggregate Page Loads: "+ loadRequests);
         System.out.println("+----------------------------------------+");
         System.out.print("Aggregate BHR (BHR1) : ");
         System.out.printf("%9.5f\n", aggregateBHR);
@@ -369,22 +2226,22 @@ public class BufMgr implements GlobalConst
         if(totPageHits > 0)
         {
             System.out.println("Page No.\tNo. of Page Loads\tNo. of Page Hits\tNo. of times Victim\tHit Ratios");
-            for(int i =0; i <  kTopPages; i++)
-                System.out.println(pageRefCount[i][0] + "\t\t\t" + pageRefCount[i][1] + "\t\t\t" + pageRefCount[i][2] + "\t\t\t" + pageRefCount[i][3] + "\t\t\t" + (pageRefCount[i][2]/totPageHits));
+            for(int i =0; i < topPages.length; i++)
+                System.out.println(topPages[i][0] + "\t\t\t" + topPages[i][1] + "\t\t\t" + topPages[i][2] + "\t\t\t" + topPages[i][3] + "\t\t\t" + (topPages[i][2]/totPageHits));
         }
 
         // If total pages are < 0, do not calculate hit ratios
         else
         {
             System.out.println("Page No.\tNo. of Page Loads\tNo. of Page Hits\tNo. of times Victim\tHit Ratios");
-            for(int i =0; i < kTopPages; i++)
-                System.out.println(pageRefCount[i][0] + "\t\t\t" + pageRefCount[i][1] + "\t\t\t" + pageRefCount[i][2] + "\t\t\t" + pageRefCount[i][3] + "\t\t\t" + 0);
+            for(int i =0; i < topPages.length; i++)
+                System.out.println(topPages[i][0] + "\t\t\t" + topPages[i][1] + "\t\t\t" + topPages[i][2] + "\t\t\t" + topPages[i][3] + "\t\t\t" + 0);
         }
         System.out.println("+----------------------------------------+");
 
         try
         {
-            outputToFile();
+            outputToFile(loadRequests, topPages);
         }
 
        catch(Exception e)
@@ -399,9 +2256,18 @@ public class BufMgr implements GlobalConst
      * @throws IOException
      */
     public void outputToFile() throws IOException 
+    {
+        outputToFile(pageLoadRequests - 1, pageStats.topPages(kTopPages));
+    }
+
+    /**
+     * @brief Prints the given load count and most hit pages, with the other
+     * BHR information, to the output file
+     */
+    private void outputToFile(int loadRequests, int[][] topPages) throws IOException
     {
         String folderName = "output";
-        String fileName = "Lru-bhrtest-output-" + numberOfBuffers + ".txt" ;
+        String fileName = replacerName + "-bhrtest-output-" + numberOfBuffers + ".txt" ;
         File folder = new File(folderName);
         File file = new File(folder, fileName);
 
@@ -422,13 +2288,13 @@ public class BufMgr implements GlobalConst
 
             //print counts:
             writer.write("+----------------------------------------+\n");
-            writer.write("The policy Being used is Lru\n");
+            writer.write("The policy Being used is " + replacerName + "\n");
             writer.write("+----------------------------------------+\n");
             writer.write("The number of buffers is: " + getNumBuffers() + "\n");
             writer.write("+----------------------------------------+\n");
             writer.write("Aggregate Page Hits: "+ totPageHits + "\n");
             writer.write("+----------------------------------------+\n");
-            writer.write("Aggregate Page Loads: "+ pageLoadRequests + "\n");
+            writer.write("Aggregate Page Loads: "+ loadRequests + "\n");
             writer.write("+----------------------------------------+\n");
             writer.write("Aggregate BHR (BHR1) : ");
             writer.write(String.valueOf(aggregateBHR) + "\n");
@@ -439,16 +2305,16 @@ public class BufMgr implements GlobalConst
             if(totPageHits > 0)
             {
                 writer.write("Page No.\t\tNo. of Page Loads\t\tNo. of Page Hits\t\tNo. of times Victim\t\tHit Ratios\n");
-                for(int i =0; i <  kTopPages; i++)
-                    writer.write(pageRefCount[i][0] + "\t\t\t\t" + pageRefCount[i][1] + "\t\t\t\t" + pageRefCount[i][2] + "\t\t\t\t" + pageRefCount[i][3] + "\t\t\t\t" + (pageRefCount[i][2]/totPageHits) + "\n");
+                for(int i =0; i < topPages.length; i++)
+                    writer.write(topPages[i][0] + "\t\t\t\t" + topPages[i][1] + "\t\t\t\t" + topPages[i][2] + "\t\t\t\t" + topPages[i][3] + "\t\t\t\t" + (topPages[i][2]/totPageHits) + "\n");
             }
 
             // If total pages are < 0, do not calculate hit ratios
             else
             {
                 writer.write("Page No.\t\tNo. of Page Loads\t\tNo. of Page Hits\t\tNo. of times Victim\t\tHit Ratios\n");
-                for(int i =0; i < kTopPages; i++)
-                    writer.write(pageRefCount[i][0] + "\t\t\t\t" + pageRefCount[i][1] + "\t\t\t\t" + pageRefCount[i][2] + "\t\t\t\t" + pageRefCount[i][3] + "\t\t\t\t" + 0 + "\n");
+                for(int i =0; i < topPages.length; i++)
+                    writer.write(topPages[i][0] + "\t\t\t\t" + topPages[i][1] + "\t\t\t\t" + topPages[i][2] + "\t\t\t\t" + topPages[i][3] + "\t\t\t\t" + 0 + "\n");
             }
 
             writer.write("+----------------------------------------+\n");
@@ -0,0 +1,169 @@
+package bufmgr;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/*
+ * @brief Java Flight Recorder events for buffer pool activity. They are all
+ * disabled by default; turn them on by name in a recording's settings, e.g.
+ * with a .jfc file giving bufmgr.Pin#enabled=true. While they are off, the
+ * JIT removes the unused event objects and a check of shouldCommit is all
+ * that is left on the hot path.
+ */
+final class BufMgrEvents
+{
+    private BufMgrEvents()
+    {
+    }
+
+    /** @brief - A pin of a page, from the call to the page being ready. */
+    @Name("bufmgr.Pin")
+    @Label("Page Pin")
+    @Category("Buffer Manager")
+    @Enabled(false)
+    @StackTrace(false)
+    static class Pin extends Event
+    {
+        @Label("Page")
+        int pageId;
+
+        @Label("Frame")
+        int frame;
+
+        @Label("Hit")
+        @Description("The page was in the pool already")
+        boolean hit;
+
+        @Label("Replacer")
+        String replacer;
+
+        /** @brief - Fills the event in and commits it, if the recording wants it. */
+        void emit(int pageId, int frame, boolean hit, String replacer)
+        {
+            if(shouldCommit())
+            {
+                this.pageId = pageId;
+                this.frame = frame;
+                this.hit = hit;
+                this.replacer = replacer;
+                commit();
+            }
+        }
+    }
+
+    /** @brief - A page leaving its frame to make room for another. */
+    @Name("bufmgr.Eviction")
+    @Label("Page Eviction")
+    @Category("Buffer Manager")
+    @Enabled(false)
+    @StackTrace(false)
+    static class Eviction extends Event
+    {
+        @Label("Victim Page")
+        int pageId;
+
+        @Label("Frame")
+        int frame;
+
+        @Label("Dirty")
+        @Description("The page had to be written before it was dropped")
+        boolean dirty;
+
+        @Label("Replacer")
+        String replacer;
+
+        /** @brief - Fills the event in and commits it, if the recording wants it. */
+        void emit(int pageId, int frame, boolean dirty, String replacer)
+        {
+            if(shouldCommit())
+            {
+                this.pageId = pageId;
+                this.frame = frame;
+                this.dirty = dirty;
+                this.replacer = replacer;
+                commit();
+            }
+        }
+    }
+
+    /** @brief - A disk transfer of a page, or of a run of pages at once. */
+    abstract static class PageIo extends Event
+    {
+        @Label("Page")
+        @Description("The page, or the first page of the run")
+        int pageId;
+
+        @Label("Pages")
+        int count;
+
+        @Label("Frame")
+        @Description("The page's frame, or that of the first page of the run")
+        int frame;
+
+        @Label("Replacer")
+        String replacer;
+
+        /** @brief - Fills the event in and commits it, if the recording wants it. */
+        void emit(int pageId, int count, int frame, String replacer)
+        {
+            if(shouldCommit())
+            {
+                this.pageId = pageId;
+                this.count = count;
+                this.frame = frame;
+                this.replacer = replacer;
+                commit();
+            }
+        }
+    }
+
+    /** @brief - A disk read into the pool. */
+    @Name("bufmgr.PageRead")
+    @Label("Page Read")
+    @Category("Buffer Manager")
+    @Enabled(false)
+    @StackTrace(false)
+    static class PageRead extends PageIo
+    {
+    }
+
+    /** @brief - A disk write from the pool. */
+    @Name("bufmgr.PageWrite")
+    @Label("Page Write")
+    @Category("Buffer Manager")
+    @Enabled(false)
+    @StackTrace(false)
+    static class PageWrite extends PageIo
+    {
+    }
+
+    /** @brief - A pin refused because every frame was pinned. */
+    @Name("bufmgr.PinFailure")
+    @Label("Pin Failure")
+    @Category("Buffer Manager")
+    @Enabled(false)
+    static class PinFailure extends Event
+    {
+        @Label("Page")
+        int pageId;
+
+        @Label("Replacer")
+        String replacer;
+
+        /** @brief - Fills the event in and commits it, if the recording wants it. */
+        void emit(int pageId, String replacer)
+        {
+            if(shouldCommit())
+            {
+                this.pageId = pageId;
+                this.replacer = replacer;
+                commit();
+            }
+        }
+    }
+
+} // final class BufMgrEvents
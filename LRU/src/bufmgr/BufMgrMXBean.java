@@ -0,0 +1,71 @@
+package bufmgr;
+import java.util.Map;
+
+/*
+ * @brief Live figures of a buffer manager, as published over JMX. Counts run
+ * from the creation of the buffer manager, latencies from the last reset;
+ * frame counts are taken when read. See BufMgr.registerMBean.
+ */
+public interface BufMgrMXBean
+{
+    /** @brief - Gets the number of pins that found their page in the pool. */
+    long getHits();
+
+    /** @brief - Gets the number of pins that had to read their page in. */
+    long getMisses();
+
+    /** @brief - Gets the fraction of pins that were hits, 0 before the first pin. */
+    double getHitRatio();
+
+    /** @brief - Gets the number of pages evicted to make room for others. */
+    long getEvictions();
+
+    /** @brief - Gets the number of dirty pages written back to disk. */
+    long getWriteBacks();
+
+    /** @brief - Gets the number of pins refused because every frame was pinned. */
+    long getPinFailures();
+
+    /** @brief - Gets the number of frames in the pool. */
+    int getNumBuffers();
+
+    /** @brief - Gets the number of frames pinned at least once. */
+    int getNumPinned();
+
+    /** @brief - Gets the number of frames holding unwritten changes. */
+    int getNumDirty();
+
+    /** @brief - Gets the number of frames holding no page. */
+    int getNumFree();
+
+    /** @brief - Gets the name of the replacement policy. */
+    String getReplacer();
+
+    /** @brief - Gets figures about the replacement policy's own state, such as the sizes of its lists. */
+    Map<String, Long> getReplacerDetails();
+
+    /** @brief - Tells whether pin and disk latencies are being recorded. */
+    boolean isLatencyTracking();
+
+    /** @brief - Starts or stops recording pin and disk latencies; the histograms keep what they have. */
+    void setLatencyTracking(boolean on);
+
+    /** @brief - Gets the latencies, in ns, of pins that found their page in the pool. */
+    LatencyHistogram.Snapshot getHitLatency();
+
+    /** @brief - Gets the latencies, in ns, of pins that read their page into a clean victim. */
+    LatencyHistogram.Snapshot getCleanMissLatency();
+
+    /** @brief - Gets the latencies, in ns, of pins that first had to write a dirty victim. */
+    LatencyHistogram.Snapshot getDirtyMissLatency();
+
+    /** @brief - Gets the latencies, in ns, of disk reads, of one page or a run of them. */
+    LatencyHistogram.Snapshot getReadLatency();
+
+    /** @brief - Gets the latencies, in ns, of disk writes, of one page or a run of them. */
+    LatencyHistogram.Snapshot getWriteLatency();
+
+    /** @brief - Empties all the latency histograms. */
+    void resetLatencies();
+
+} // public interface BufMgrMXBean
@@ -0,0 +1,173 @@
+package bufmgr;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * @brief The counters behind a buffer manager's MBean. They are LongAdders,
+ * so the hit path can count without making threads fight over one cache
+ * line. Frame counts and replacer figures are asked of the buffer manager
+ * when they are read.
+ */
+class BufMgrMetrics implements BufMgrMXBean
+{
+    /** @brief - the buffer manager whose frames are counted */
+    private BufMgr mgr;
+
+    /** @brief - pins served from the pool, and pins that read their page in */
+    final LongAdder hits = new LongAdder();
+    final LongAdder misses = new LongAdder();
+
+    /** @brief - pages evicted, and dirty pages written to disk */
+    final LongAdder evictions = new LongAdder();
+    final LongAdder writeBacks = new LongAdder();
+
+    /** @brief - pins that failed with "Buffer pool exceeded" */
+    final LongAdder pinFailures = new LongAdder();
+
+    /** @brief - whether latencies are recorded; off by default, as timing costs two clock reads */
+    private volatile boolean latencyTracking;
+
+    /** @brief - latencies of pins: hits, misses with a clean victim, misses with a dirty one */
+    final LatencyHistogram hitLatency = new LatencyHistogram();
+    final LatencyHistogram cleanMissLatency = new LatencyHistogram();
+    final LatencyHistogram dirtyMissLatency = new LatencyHistogram();
+
+    /** @brief - latencies of disk reads and writes */
+    final LatencyHistogram readLatency = new LatencyHistogram();
+    final LatencyHistogram writeLatency = new LatencyHistogram();
+
+    BufMgrMetrics(BufMgr mgr)
+    {
+        this.mgr = mgr;
+        latencyTracking = Boolean.getBoolean(BufMgr.LATENCY_PROPERTY);
+    }
+
+    /**
+     * @brief - Gets the time an operation starts, to be passed to record
+     * when it ends; 0 if latencies are not being recorded.
+     */
+    long startTiming()
+    {
+        return latencyTracking ? System.nanoTime() : 0;
+    }
+
+    /**
+     * @brief - Records the latency of an operation started at the given
+     * time, unless latencies were not being recorded then.
+     */
+    void record(LatencyHistogram histogram, long start)
+    {
+        if(start != 0)
+            histogram.record(System.nanoTime() - start);
+    }
+
+    public long getHits()
+    {
+        return hits.sum();
+    }
+
+    public long getMisses()
+    {
+        return misses.sum();
+    }
+
+    public double getHitRatio()
+    {
+        long h = hits.sum();
+        long total = h + misses.sum();
+        return (total == 0) ? 0 : (double) h / total;
+    }
+
+    public long getEvictions()
+    {
+        return evictions.sum();
+    }
+
+    public long getWriteBacks()
+    {
+        return writeBacks.sum();
+    }
+
+    public long getPinFailures()
+    {
+        return pinFailures.sum();
+    }
+
+    public int getNumBuffers()
+    {
+        return mgr.getNumBuffers();
+    }
+
+    public int getNumPinned()
+    {
+        return mgr.getNumBuffers() - mgr.getNumUnpinned();
+    }
+
+    public int getNumDirty()
+    {
+        return mgr.getNumDirty();
+    }
+
+    public int getNumFree()
+    {
+        return mgr.getNumFree();
+    }
+
+    public String getReplacer()
+    {
+        return mgr.replacerName;
+    }
+
+    public Map<String, Long> getReplacerDetails()
+    {
+        Map<String, Long> details = new TreeMap<String, Long>();
+        mgr.replacerDetails(details);
+        return details;
+    }
+
+    public boolean isLatencyTracking()
+    {
+        return latencyTracking;
+    }
+
+    public void setLatencyTracking(boolean on)
+    {
+        latencyTracking = on;
+    }
+
+    public LatencyHistogram.Snapshot getHitLatency()
+    {
+        return hitLatency.snapshot();
+    }
+
+    public LatencyHistogram.Snapshot getCleanMissLatency()
+    {
+        return cleanMissLatency.snapshot();
+    }
+
+    public LatencyHistogram.Snapshot getDirtyMissLatency()
+    {
+        return dirtyMissLatency.snapshot();
+    }
+
+    public LatencyHistogram.Snapshot getReadLatency()
+    {
+        return readLatency.snapshot();
+    }
+
+    public LatencyHistogram.Snapshot getWriteLatency()
+    {
+        return writeLatency.snapshot();
+    }
+
+    public void resetLatencies()
+    {
+        hitLatency.reset();
+        cleanMissLatency.reset();
+        dirtyMissLatency.reset();
+        readLatency.reset();
+        writeLatency.reset();
+    }
+
+} // class BufMgrMetrics implements BufMgrMXBean
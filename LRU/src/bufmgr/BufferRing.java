@@ -0,0 +1,57 @@
+package bufmgr;
+
+/**
+ * @brief A bulk-read access strategy: a small private ring of buffer frames
+ * that a large sequential scan recycles for its own pages, so the scan only
+ * ever occupies a bounded slice of the pool and leaves the hot set in place.
+ * Get one from BufMgr.getScanRing and pass it to the matching pinPage.
+ */
+public class BufferRing
+{
+	/** @desc - frame used by each slot of the ring, -1 while unused */
+	protected int frames[];
+
+	/** @desc - page the ring last read into each slot's frame */
+	protected int pids[];
+
+	/** @desc - slot to be reused by the next miss */
+	protected int next;
+
+	/**
+	 * Constructs an empty ring.
+	 * @param size - number of frames in the ring
+	 */
+	public BufferRing(int size)
+	{
+		if (size < 1)
+			throw new IllegalArgumentException("Ring size must be positive");
+		frames = new int[size];
+		pids = new int[size];
+		for (int i = 0; i < size; i++)
+		{
+			frames[i] = -1;
+			pids[i] = -1;
+		}
+		next = 0;
+	}
+
+	/**
+	 * Gets the number of frames in the ring.
+	 */
+	public int size()
+	{
+		return frames.length;
+	}
+
+	/**
+	 * Records that the current slot now holds the given page in the given
+	 * frame, and moves on to the next slot.
+	 */
+	void record(int frameNo, int pid)
+	{
+		frames[next] = frameNo;
+		pids[next] = pid;
+		next = (next + 1) % frames.length;
+	}
+
+} // public class BufferRing
@@ -0,0 +1,71 @@
+package bufmgr;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * @brief Counts how often each page number is seen in a fixed amount of
+ * memory, however many pages the database has. Every page is counted in one
+ * cell of each row, chosen by a different hash per row; pages that share a
+ * cell add up, so each row overestimates, and the smallest of a page's cells
+ * is its estimate. Counts are atomic, so any number of threads may add at once.
+ */
+class CountMinSketch
+{
+	/** @desc - odd multipliers, one hash function per row */
+	private static final int SEEDS[] = { 0x9E3779B1, 0x85EBCA77, 0xC2B2AE3D, 0x27D4EB2F,
+		0x165667B1, 0xD3A2646D, 0xFD7046C5, 0xB55A4F09 };
+
+	/** @desc - the cells, row after row */
+	private AtomicIntegerArray counts;
+	/** @desc - number of rows */
+	private int depth;
+	/** @desc - log2 of the number of cells per row */
+	private int bits;
+
+	/**
+	 * Constructs an empty sketch.
+	 * @param depth - number of rows, at most 8; more rows make a bad estimate less likely
+	 * @param width - cells per row, rounded up to a power of two; wider rows
+	 * make estimates closer
+	 */
+	public CountMinSketch(int depth, int width)
+	{
+		if (depth < 1 || depth > SEEDS.length || width < 2)
+			throw new IllegalArgumentException("Invalid sketch size");
+		this.depth = depth;
+		bits = 32 - Integer.numberOfLeadingZeros(width - 1);
+		counts = new AtomicIntegerArray(depth << bits);
+	}
+
+	/**
+	 * Gets the cell counting a page in the given row: the top bits of the page
+	 * number times the row's multiplier.
+	 */
+	private int cell(int row, int key)
+	{
+		return (row << bits) + ((key * SEEDS[row]) >>> (32 - bits));
+	}
+
+	/**
+	 * Counts one more occurrence of a page.
+	 * @param key - the page number
+	 */
+	public void add(int key)
+	{
+		for (int r = 0; r < depth; r++)
+			counts.getAndIncrement(cell(r, key));
+	}
+
+	/**
+	 * Estimates how often a page was counted. Never less than the true count.
+	 * @param key - the page number
+	 */
+	public int estimate(int key)
+	{
+		int min = Integer.MAX_VALUE;
+		for (int r = 0; r < depth; r++)
+			min = Math.min(min, counts.get(cell(r, key)));
+		return min;
+	}
+
+} // class CountMinSketch
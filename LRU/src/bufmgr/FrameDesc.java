@@ -1,6 +1,8 @@
 package bufmgr;
 
 import global.PageId;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * @brief A frame descriptor; contains info about each page in the buffer pool.
@@ -13,15 +15,42 @@ class FrameDesc {
   /** @desc - Identifies the frame's page. */
   public PageId pageno;
 
-  /** @desc - The frame's pin count. */
-  public int pincnt;
+  /**
+   * @desc - The frame's pin count (low bits) and BUSY flag, packed into one
+   * word so both change together with a single compare-and-set.
+   */
+  private volatile int pinState;
+
+  /** @desc - Set while the frame is claimed for eviction, loading or freeing. */
+  protected static final int BUSY = 1 << 30;
+
+  /** @desc - Bits of pinState holding the pin count. */
+  protected static final int PIN_MASK = BUSY - 1;
+
+  /** @desc - Held while the frame is claimed, read into or written out. */
+  public final ReentrantLock latch = new ReentrantLock();
+
+  private static final AtomicIntegerFieldUpdater<FrameDesc> PINSTATE =
+      AtomicIntegerFieldUpdater.newUpdater(FrameDesc.class, "pinState");
+
+  /** @desc - 1 while the frame holds a page read ahead that nobody pinned yet. */
+  private volatile int prefetched;
 
-  /** @desc - The frame's dirty status. */
-  public boolean dirty;
+  private static final AtomicIntegerFieldUpdater<FrameDesc> PREFETCHED =
+      AtomicIntegerFieldUpdater.newUpdater(FrameDesc.class, "prefetched");
+
+  /**
+   * @desc - Access clock readings of the frame's latest lock-free pin and
+   * latest release, which order them when the replacer catches up.
+   */
+  public volatile long hitStamp, releaseStamp;
 
   /* @desc - Generic state used by replacers. */
   public int state;
 
+  /* @desc - access hint given with the most recent pin */
+  public AccessHint hint;
+
   /* @desc - number of hits for current page */
   public int numOfHits;
 
@@ -35,11 +64,94 @@ class FrameDesc {
   {
     this.index = index;
     pageno = new PageId();
-    pincnt = 0;
-    dirty = false;
+    pinState = 0;
     state = 0;
+    hint = AccessHint.NORMAL;
     numOfHits = 0;
     numOfLoads = 0;
   }
 
+  /**
+   * Gets the frame's pin count.
+   */
+  public int getPinCount()
+  {
+    return pinState & PIN_MASK;
+  }
+
+  /**
+   * Tells whether the frame is claimed by a thread evicting, loading or
+   * freeing it.
+   */
+  public boolean isBusy()
+  {
+    return (pinState & BUSY) != 0;
+  }
+
+  /**
+   * Atomically adds a pin, unless the frame is busy.
+   * @return true if the frame was pinned
+   */
+  public boolean tryPin()
+  {
+    while (true)
+    {
+      int s = pinState;
+      if ((s & BUSY) != 0)
+        return false;
+      if (PINSTATE.compareAndSet(this, s, s + 1))
+        return true;
+    }
+  }
+
+  /**
+   * Atomically removes a pin, unless the frame is not pinned.
+   * @return the new pin count, or -1 if the frame was not pinned
+   */
+  public int unpin()
+  {
+    while (true)
+    {
+      int s = pinState;
+      if ((s & PIN_MASK) == 0)
+        return -1;
+      if (PINSTATE.compareAndSet(this, s, s - 1))
+        return (s - 1) & PIN_MASK;
+    }
+  }
+
+  /**
+   * Atomically marks an unpinned frame busy, so no one can pin it.
+   * @return true if the frame was unpinned and is now claimed
+   */
+  public boolean tryClaim()
+  {
+    return PINSTATE.compareAndSet(this, 0, BUSY);
+  }
+
+  /**
+   * Ends a claim, leaving the frame with the given number of pins.
+   */
+  public void release(int pins)
+  {
+    pinState = pins;
+  }
+
+  /**
+   * Notes that the frame's page was read ahead.
+   */
+  public void markPrefetched()
+  {
+    prefetched = 1;
+  }
+
+  /**
+   * Atomically clears the read-ahead mark, so only one thread sees it.
+   * @return true if the frame's page was read ahead and not used since
+   */
+  public boolean takePrefetched()
+  {
+    return prefetched != 0 && PREFETCHED.compareAndSet(this, 1, 0);
+  }
+
 } // class FrameDesc
@@ -0,0 +1,199 @@
+package bufmgr;
+
+/**
+ * @brief An intrusive doubly-linked list of frame numbers. The links are kept
+ * in primitive int arrays indexed by frame number, so every operation is
+ * constant time and nothing is allocated once the list is built.
+ * A frame can be in at most one position of a given list at a time.
+ */
+class FrameList
+{
+	/** @desc - marks the end of the list / a frame that is not linked */
+	protected static final int NIL = -1;
+
+	/** @desc - previous frame towards the head, indexed by frame number */
+	private int prev[];
+	/** @desc - next frame towards the tail, indexed by frame number */
+	private int next[];
+	/** @desc - whether the frame is currently linked into this list */
+	private boolean linked[];
+
+	/** @desc - least recently added end of the list */
+	private int head;
+	/** @desc - most recently added end of the list */
+	private int tail;
+	/** @desc - number of frames in the list */
+	private int size;
+
+	/**
+	 * Constructs an empty list able to hold frames 0 .. numFrames-1.
+	 * @param numFrames - the number of frames in the buffer pool
+	 */
+	public FrameList(int numFrames)
+	{
+		prev = new int[numFrames];
+		next = new int[numFrames];
+		linked = new boolean[numFrames];
+		clear();
+	}
+
+	/**
+	 * Unlinks every frame from the list.
+	 */
+	public void clear()
+	{
+		for (int i = 0; i < linked.length; i++)
+		{
+			prev[i] = NIL;
+			next[i] = NIL;
+			linked[i] = false;
+		}
+		head = NIL;
+		tail = NIL;
+		size = 0;
+	}
+
+	/**
+	 * Links the frame at the head of the list.
+	 * @param frameNo - the frame number
+	 */
+	public void addFirst(int frameNo)
+	{
+		remove(frameNo);
+		prev[frameNo] = NIL;
+		next[frameNo] = head;
+		if (head != NIL)
+			prev[head] = frameNo;
+		else
+			tail = frameNo;
+		head = frameNo;
+		linked[frameNo] = true;
+		size++;
+	}
+
+	/**
+	 * Links the frame at the tail of the list.
+	 * @param frameNo - the frame number
+	 */
+	public void addLast(int frameNo)
+	{
+		remove(frameNo);
+		next[frameNo] = NIL;
+		prev[frameNo] = tail;
+		if (tail != NIL)
+			next[tail] = frameNo;
+		else
+			head = frameNo;
+		tail = frameNo;
+		linked[frameNo] = true;
+		size++;
+	}
+
+	/**
+	 * Unlinks the frame from the list; does nothing if it is not linked.
+	 * @param frameNo - the frame number
+	 * @return true if the frame was in the list
+	 */
+	public boolean remove(int frameNo)
+	{
+		if (!linked[frameNo])
+			return false;
+
+		if (prev[frameNo] != NIL)
+			next[prev[frameNo]] = next[frameNo];
+		else
+			head = next[frameNo];
+
+		if (next[frameNo] != NIL)
+			prev[next[frameNo]] = prev[frameNo];
+		else
+			tail = prev[frameNo];
+
+		prev[frameNo] = NIL;
+		next[frameNo] = NIL;
+		linked[frameNo] = false;
+		size--;
+		return true;
+	}
+
+	/**
+	 * Unlinks and returns the head of the list.
+	 * @return the frame number, or NIL if the list is empty
+	 */
+	public int removeFirst()
+	{
+		int frameNo = head;
+		if (frameNo != NIL)
+			remove(frameNo);
+		return frameNo;
+	}
+
+	/**
+	 * Unlinks and returns the tail of the list.
+	 * @return the frame number, or NIL if the list is empty
+	 */
+	public int removeLast()
+	{
+		int frameNo = tail;
+		if (frameNo != NIL)
+			remove(frameNo);
+		return frameNo;
+	}
+
+	/** @return the head of the list, or NIL if empty */
+	public int first()
+	{
+		return head;
+	}
+
+	/** @return the tail of the list, or NIL if empty */
+	public int last()
+	{
+		return tail;
+	}
+
+	/** @return the frame after the given one towards the tail, or NIL */
+	public int next(int frameNo)
+	{
+		return next[frameNo];
+	}
+
+	/** @return the frame before the given one towards the head, or NIL */
+	public int prev(int frameNo)
+	{
+		return prev[frameNo];
+	}
+
+	/** @return true if the frame is linked into this list */
+	public boolean contains(int frameNo)
+	{
+		return linked[frameNo];
+	}
+
+	/** @return the number of frames in the list */
+	public int size()
+	{
+		return size;
+	}
+
+	/** @return true if the list holds no frames */
+	public boolean isEmpty()
+	{
+		return size == 0;
+	}
+
+	/**
+	 * Appends the frames of the list to an array, as far as it has room.
+	 * @param out - the array
+	 * @param n - number of entries already in out
+	 * @param fromHead - true to go from the head to the tail, false the other way
+	 * @return the number of entries in out afterwards
+	 */
+	public int copyTo(int out[], int n, boolean fromHead)
+	{
+		for (int i = fromHead ? head : tail; i != NIL && n < out.length; i = fromHead ? next[i] : prev[i])
+			out[n++] = i;
+		return n;
+	}
+
+} // class FrameList
@@ -0,0 +1,201 @@
+package bufmgr;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @brief Counts latencies in logarithmic buckets, in the manner of an HDR
+ * histogram: each power of two is split into SUB_BUCKETS equal buckets, so a
+ * value is known to within 1 / SUB_BUCKETS of itself however large it is, and
+ * the whole range of a long fits in a few hundred counters. Threads record
+ * into one of several stripes, picked by thread, so they seldom share a cache
+ * line; snapshots add the stripes up.
+ */
+public class LatencyHistogram
+{
+	/** @desc - log2 of the number of buckets each power of two is split into */
+	protected static final int SUB_BITS = 4;
+	/** @desc - number of buckets each power of two is split into */
+	protected static final int SUB_BUCKETS = 1 << SUB_BITS;
+	/** @desc - buckets needed to cover every non-negative long */
+	protected static final int NUM_BUCKETS = (64 - SUB_BITS) * SUB_BUCKETS;
+	/** @desc - most stripes, whatever the number of cores */
+	protected static final int MAX_STRIPES = 8;
+
+	/** @desc - the counts, stripe after stripe */
+	private AtomicLongArray counts;
+	/** @desc - number of stripes - 1; the number is a power of two */
+	private int stripeMask;
+	/** @desc - sum of the values recorded, for the mean */
+	private LongAdder total = new LongAdder();
+	/** @desc - largest value recorded */
+	private LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+	/**
+	 * Constructs an empty histogram, with a stripe per core up to MAX_STRIPES.
+	 */
+	public LatencyHistogram()
+	{
+		int cores = Runtime.getRuntime().availableProcessors();
+		int stripes = Math.min(MAX_STRIPES, Integer.highestOneBit(Math.max(1, cores) * 2 - 1));
+		stripeMask = stripes - 1;
+		counts = new AtomicLongArray(stripes * NUM_BUCKETS);
+	}
+
+	/**
+	 * Gets the bucket of a value. Values below 2 * SUB_BUCKETS have a bucket
+	 * each; above, the bucket is given by the highest set bit and the
+	 * SUB_BITS bits after it.
+	 */
+	protected static int bucket(long value)
+	{
+		if (value < 2 * SUB_BUCKETS)
+			return (int) Math.max(0, value);
+		int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+		return (shift + 1) * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+	}
+
+	/**
+	 * Gets the largest value that falls in a bucket.
+	 */
+	protected static long highestValue(int bucket)
+	{
+		if (bucket < 2 * SUB_BUCKETS)
+			return bucket;
+		int shift = bucket / SUB_BUCKETS - 1;
+		long lowest = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+		return lowest + (1L << shift) - 1;
+	}
+
+	/**
+	 * Records one latency.
+	 * @param nanos - the latency, in nanoseconds
+	 */
+	public void record(long nanos)
+	{
+		int stripe = (int) Thread.currentThread().getId() & stripeMask;
+		counts.getAndIncrement(stripe * NUM_BUCKETS + bucket(nanos));
+		total.add(nanos);
+		max.accumulate(nanos);
+	}
+
+	/**
+	 * Takes a copy of the counts. Recording goes on meanwhile, so a snapshot
+	 * taken under load may miss a few of the latest values.
+	 */
+	public Snapshot snapshot()
+	{
+		return takeSnapshot(false);
+	}
+
+	/**
+	 * Takes a copy of the counts and starts them over from zero. A value
+	 * recorded meanwhile lands in either the snapshot or the new counts.
+	 */
+	public Snapshot snapshotAndReset()
+	{
+		return takeSnapshot(true);
+	}
+
+	/**
+	 * Starts the counts over from zero.
+	 */
+	public void reset()
+	{
+		takeSnapshot(true);
+	}
+
+	private Snapshot takeSnapshot(boolean reset)
+	{
+		long buckets[] = new long[NUM_BUCKETS];
+		for (int i = 0; i < counts.length(); i++)
+			buckets[i % NUM_BUCKETS] += reset ? counts.getAndSet(i, 0) : counts.get(i);
+		long sum = reset ? total.sumThenReset() : total.sum();
+		long largest = reset ? max.getThenReset() : max.get();
+		return new Snapshot(buckets, sum, largest);
+	}
+
+	/**
+	 * @brief The counts of a histogram at one moment, and the figures taken
+	 * from them. A percentile is given as the largest value of its bucket,
+	 * and never more than the largest value recorded.
+	 */
+	public static class Snapshot
+	{
+		/** @desc - count of each bucket */
+		private long buckets[];
+		/** @desc - number of values */
+		private long count;
+		/** @desc - sum of the values */
+		private long sum;
+		/** @desc - largest value */
+		private long max;
+
+		Snapshot(long buckets[], long sum, long max)
+		{
+			this.buckets = buckets;
+			this.sum = sum;
+			this.max = max;
+			for (long c : buckets)
+				count += c;
+		}
+
+		/** Gets the number of latencies recorded. */
+		public long getCount()
+		{
+			return count;
+		}
+
+		/** Gets the mean latency in nanoseconds, 0 if there are none. */
+		public double getMean()
+		{
+			return (count == 0) ? 0 : (double) sum / count;
+		}
+
+		/** Gets the largest latency in nanoseconds, 0 if there are none. */
+		public long getMax()
+		{
+			return max;
+		}
+
+		/**
+		 * Gets the latency that the given percentage of latencies do not
+		 * exceed, in nanoseconds; 0 if there are none.
+		 * @param percentile - between 0 and 100
+		 */
+		public long getValueAtPercentile(double percentile)
+		{
+			if (count == 0)
+				return 0;
+			long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+			long seen = 0;
+			for (int i = 0; i < buckets.length; i++)
+			{
+				seen += buckets[i];
+				if (seen >= rank)
+					return Math.min(highestValue(i), max);
+			}
+			return max;
+		}
+
+		/** Gets the median latency in nanoseconds. */
+		public long getP50()
+		{
+			return getValueAtPercentile(50);
+		}
+
+		/** Gets the 99th percentile latency in nanoseconds. */
+		public long getP99()
+		{
+			return getValueAtPercentile(99);
+		}
+
+		/** Gets the 99.9th percentile latency in nanoseconds. */
+		public long getP999()
+		{
+			return getValueAtPercentile(99.9);
+		}
+	}
+
+} // public class LatencyHistogram
@@ -1,9 +1,12 @@
 package bufmgr;
 import diskmgr.*;
 import global.*;
+import java.util.Map;
 
 /**
- * @brief Implements the Least Recently Used Algorithm for page replacement
+ * @brief Implements the Least Recently Used Algorithm for page replacement.
+ * Only unpinned frames are kept in an intrusive linked list (see FrameList),
+ * so touching, unlinking and picking a victim are all constant time.
  */
 class Lru extends Replacer 
 {
@@ -14,82 +17,81 @@ class Lru extends Replacer
 	protected static final int PINNED = 12;
 	private BufMgr mgrArg;
 
-	/** @desc - holds number of frames in the buffer pool */
-	private int  nframes; 
-	/** @desc - array of frames */ 
-	private int  frames[]; 
+	/** @desc - unpinned frames only, ordered from LRU (head) to MRU (tail) */
+	private FrameList unpinned;
 
 	public Lru(BufMgr mgrArg)
 	{
 		super(mgrArg);
 		this.mgrArg = mgrArg;
 
-		// Initilize array of frame indexs
-		// Frames are initially available
+		// Frames are initially available, and all of them are candidates
+		// in frame order, so the empty pool is filled from frame 0 upwards
+		unpinned = new FrameList(frametab.length);
 		for (int i = 0; i < frametab.length; i++) 
-			frametab[i].state = AVAILABLE;
-		
-		nframes = 0;
-		frames = new int[frametab.length];
-	}
-
-	/**
-	 * This pushes the given frame to the end of the list.
-	 * List Order: < LRU (Least recently used frame ) <------> MRU (Most recently used frame)>
-	 * @param frameNo- the frame number
-	**/
-	private void update(int frameNo) 
-	{
-		// Check to see if frame is in pool
-		int framePos = 0;
-		for (framePos = 0; framePos < nframes; ++framePos) 
 		{
-			if (frames[framePos] == frameNo ) 
-				break;
+			frametab[i].state = AVAILABLE;
+			unpinned.addLast(i);
 		}
-
-		// Update position of the Frame
-		// Most recently used prame goes at the front of the array
-		while (++framePos < nframes)
-			frames[framePos-1] = frames[framePos];
-		frames[nframes-1] = frameNo;
 	}
 
 	/**
 	 * Notifies the replacer of a pined page.
+	 * A pinned frame can not be a victim, so it leaves the unpinned list.
 	 * @param fdesc - frame descriptor object that contains details about a frame
 	 */
 	public void pinPage(FrameDesc fdesc) 
 	{
-		// Pin the page and update the frame array
-		int frameIndex = fdesc.index;
-		frametab[frameIndex].state = PINNED;
-		update(frameIndex);
+		fdesc.state = PINNED;
+		unpinned.remove(fdesc.index);
 	}
 
-    /**
-     * Notifies the replacer of an unpinned page.
-     */
-
+	/**
+	 * Notifies the replacer of an unpinned page.
+	 * Once the last pin is released the frame becomes the most recently used
+	 * candidate, i.e. it goes to the tail of the unpinned list.
+	 */
 	public void unpinPage(FrameDesc fdesc) 
 	{
-		if (fdesc.pincnt == 0)
+		if (fdesc.getPinCount() == 0)
+		{
 			fdesc.state = REFERENCED;
+			unpinned.addLast(fdesc.index);
+		}
 	}
 
 	/**
 	 * Notifies the replacer of a free page.
+	 * The frame holds nothing useful any more, so it is the next victim.
 	 */
-	public void freePage(FrameDesc fdesc) { }
+	public void freePage(FrameDesc fdesc) 
+	{
+		fdesc.state = AVAILABLE;
+		unpinned.addFirst(fdesc.index);
+	}
 
 	/**
-	 * Notifies the replacer of a new page.
+	 * Notifies the replacer of a frame that joined the pool; it is empty,
+	 * so it is the next victim.
 	 */
-	public void newPage(FrameDesc fdesc) { }
-
-
+	public void addFrame(FrameDesc fdesc)
+	{
+		freePage(fdesc);
+	}
 
+	/**
+	 * Notifies the replacer of a frame that left the pool.
+	 */
+	public void removeFrame(FrameDesc fdesc)
+	{
+		fdesc.state = PINNED;
+		unpinned.remove(fdesc.index);
+	}
 
+	/**
+	 * Notifies the replacer of a new page.
+	 */
+	public void newPage(FrameDesc fdesc) { }
 
 	/**
 	 * Finding a free frame in the buffer pool
@@ -99,38 +101,30 @@ class Lru extends Replacer
 	*/
 	public int pickVictim() 
 	{
-		int bufferSize = mgrArg.getNumBuffers();
-		
-		/** @desc - frame that is to be evicted */
-		int victim = 0;
-
-		// If the number of frames is less than th buffer size ...
-		// Put the frame at the end of the frametab
-		//  Make the frame status pinned
-		if (nframes < bufferSize)
-		{
-			victim = nframes++;
-			frames[victim] = victim;
-			frametab[victim].state = PINNED;
-			return victim;
-		}
+		// The head of the unpinned list is the least recently used frame
+		int victim = unpinned.removeFirst();
+		if (victim == FrameList.NIL)
+			return -1;
 
-		// check for unpinned frames in the frametab
- 		// pin the first encountered unpinned frame and 
-		// call the update function and return the frame
-		for (int i = 0; i < bufferSize; ++i)
-		{
-			victim = frames[i];
-			if(frametab[victim].state != PINNED)
-			{
-				frametab[victim].state = PINNED;
-				update(victim);
-				return victim;
-			}
-		}
+		frametab[victim].state = PINNED;
+		return victim;
+	}
+
+	/**
+	 * Lists the unpinned frames from least to most recently used.
+	 */
+	public int upcomingVictims(int out[], int n)
+	{
+		return unpinned.copyTo(out, n, true);
+	}
 
-		// No frames were available
-		return -1;
+	/**
+	 * Adds the number of frames on the unpinned list.
+	 * @param out - receives one entry per figure
+	 */
+	public void getDetails(Map<String, Long> out)
+	{
+		out.put("unpinned", (long) unpinned.size());
 	}
 
 	/**
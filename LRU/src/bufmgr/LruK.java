@@ -0,0 +1,306 @@
+package bufmgr;
+import global.*;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * @brief Implements the LRU-K Algorithm for page replacement (O'Neil et al.).
+ * The victim is the unpinned page whose K-th most recent reference is the
+ * oldest, so pages touched once by a scan go before pages that are used over
+ * and over. References closer together than the correlated reference period
+ * count as one, and the history of evicted pages is kept (bounded) so a page
+ * that comes back soon does not start from scratch.
+ */
+class LruK extends Replacer
+{
+	// Constants that describe status of page, the same values BufMgr uses
+	protected static final int AVAILABLE = 10;
+	protected static final int REFERENCED = 11;
+	protected static final int PINNED = 12;
+
+	/** @desc - default number of references remembered per page */
+	protected static final int DEFAULT_K = 2;
+	/** @desc - default correlated reference period, in references */
+	protected static final int DEFAULT_CRP = 10;
+	/** @desc - evicted pages whose history is retained, per buffer frame */
+	protected static final int HISTORY_PER_FRAME = 4;
+
+	private BufMgr mgrArg;
+
+	/** @desc - number of references remembered per page */
+	private int k;
+	/** @desc - references closer together than this are correlated */
+	private long crp;
+
+	/** @desc - logical clock, advanced on every reference */
+	private long clock;
+
+	/** @desc - hist[frame][i] is the time of the (i+1)-th most recent reference, 0 if none */
+	private long hist[][];
+	/** @desc - time of the last (possibly correlated) reference of each frame */
+	private long last[];
+	/** @desc - the page each frame holds as far as the replacer knows */
+	private int residentPid[];
+	/** @desc - frames holding a page read ahead and not referenced since */
+	private boolean cold[];
+
+	/** @desc - reference history of recently evicted pages, oldest first */
+	private LinkedHashMap<Integer, long[]> retained;
+
+	public LruK(BufMgr mgrArg)
+	{
+		this(mgrArg, DEFAULT_K, DEFAULT_CRP);
+	}
+
+	/**
+	 * Constructs an LRU-K replacer.
+	 * @param mgrArg - the buffer manager
+	 * @param k - number of references remembered per page (at least 1)
+	 * @param crp - correlated reference period, in references
+	 */
+	public LruK(BufMgr mgrArg, int k, int crp)
+	{
+		super(mgrArg);
+		this.mgrArg = mgrArg;
+
+		if (k < 1)
+			throw new IllegalArgumentException("LRU-K needs K >= 1");
+		this.k = k;
+		this.crp = crp;
+
+		int numFrames = frametab.length;
+		hist = new long[numFrames][k];
+		last = new long[numFrames];
+		residentPid = new int[numFrames];
+		cold = new boolean[numFrames];
+		for (int i = 0; i < numFrames; i++)
+		{
+			frametab[i].state = AVAILABLE;
+			residentPid[i] = INVALID_PAGEID;
+		}
+
+		final int maxRetained = numFrames * HISTORY_PER_FRAME;
+		retained = new LinkedHashMap<Integer, long[]>(maxRetained)
+		{
+			protected boolean removeEldestEntry(Map.Entry<Integer, long[]> eldest)
+			{
+				return size() > maxRetained;
+			}
+		};
+		clock = 0;
+	}
+
+	/**
+	 * Records a reference to the page in the given frame.
+	 * @param frameNo - the frame number
+	 */
+	private void reference(int frameNo)
+	{
+		long now = ++clock;
+		int pid = frametab[frameNo].pageno.pid;
+		long h[] = hist[frameNo];
+
+		// The page was just loaded, or read ahead and not referenced since;
+		// pick up its retained history, if any
+		if (residentPid[frameNo] != pid || cold[frameNo])
+		{
+			residentPid[frameNo] = pid;
+			cold[frameNo] = false;
+			long old[] = retained.remove(Integer.valueOf(pid));
+			for (int i = k - 1; i > 0; i--)
+				h[i] = (old != null) ? old[i - 1] : 0;
+			h[0] = now;
+			last[frameNo] = now;
+			return;
+		}
+
+		// An uncorrelated reference: close the correlated period by shifting
+		// the history forward by its length, then record the new reference
+		if (now - last[frameNo] > crp)
+		{
+			long correlPeriod = last[frameNo] - h[0];
+			for (int i = k - 1; i > 0; i--)
+				h[i] = (h[i - 1] != 0) ? h[i - 1] + correlPeriod : 0;
+			h[0] = now;
+		}
+		last[frameNo] = now;
+	}
+
+	/**
+	 * Forgets the page in the given frame, optionally keeping its history.
+	 * A page read ahead and not referenced has no history of its own; what
+	 * was retained before it was read stays as it was.
+	 * @param frameNo - the frame number
+	 * @param keep - true to retain the history for a later reload
+	 */
+	private void evict(int frameNo, boolean keep)
+	{
+		int pid = residentPid[frameNo];
+		if (keep && pid != INVALID_PAGEID && !cold[frameNo])
+			retained.put(Integer.valueOf(pid), hist[frameNo].clone());
+		else if (!keep && pid != INVALID_PAGEID)
+			retained.remove(Integer.valueOf(pid));
+		residentPid[frameNo] = INVALID_PAGEID;
+		cold[frameNo] = false;
+	}
+
+	/**
+	 * Notifies the replacer of a pined page.
+	 * @param fdesc - frame descriptor object that contains details about a frame
+	 */
+	public void pinPage(FrameDesc fdesc)
+	{
+		fdesc.state = PINNED;
+		reference(fdesc.index);
+	}
+
+	/**
+	 * Notifies the replacer of a page read ahead. It is not a reference: the
+	 * page is ranked as if last referenced now, with no earlier history, and
+	 * its first pin is recorded as loading it.
+	 * @param fdesc - frame descriptor object that contains details about a frame
+	 */
+	public void prefetchPage(FrameDesc fdesc)
+	{
+		int frameNo = fdesc.index;
+		fdesc.state = PINNED;
+		residentPid[frameNo] = fdesc.pageno.pid;
+		cold[frameNo] = true;
+		long h[] = hist[frameNo];
+		for (int i = k - 1; i > 0; i--)
+			h[i] = 0;
+		h[0] = clock;
+		last[frameNo] = clock;
+	}
+
+	/**
+	 * Notifies the replacer of an unpinned page.
+	 */
+	public void unpinPage(FrameDesc fdesc)
+	{
+		if (fdesc.getPinCount() == 0)
+			fdesc.state = REFERENCED;
+	}
+
+	/**
+	 * Notifies the replacer of a free page. The buffer manager frees a page
+	 * this replacer still holds only when it is deallocated, so its history
+	 * is dropped as well; a page evicted any other way keeps it.
+	 */
+	public void freePage(FrameDesc fdesc)
+	{
+		fdesc.state = AVAILABLE;
+		evict(fdesc.index, false);
+	}
+
+	/**
+	 * Notifies the replacer that an evicted page was deallocated; its
+	 * history is dropped.
+	 */
+	public void freeEvictedPage(int pid)
+	{
+		retained.remove(Integer.valueOf(pid));
+	}
+
+	/**
+	 * Notifies the replacer of a frame that joined the pool; it is empty.
+	 */
+	public void addFrame(FrameDesc fdesc)
+	{
+		freePage(fdesc);
+	}
+
+	/**
+	 * Notifies the replacer of a frame that left the pool. Its page may come
+	 * back in another frame, so the history is kept.
+	 */
+	public void removeFrame(FrameDesc fdesc)
+	{
+		fdesc.state = PINNED;
+		evict(fdesc.index, true);
+	}
+
+	/**
+	 * Notifies the replacer of a new page.
+	 */
+	public void newPage(FrameDesc fdesc) { }
+
+	/**
+	 * Selects the unpinned frame with the oldest K-th reference (backward
+	 * K-distance). Pages with fewer than K references count as infinitely
+	 * old and are ordered by their last reference. Frames still inside their
+	 * correlated reference period are only used if nothing else is left.
+	 * @return the frame number return -1 if failed
+	 */
+	public int pickVictim()
+	{
+		int victim = -1;
+		boolean victimCorrelated = true;
+
+		for (int i = 0; i < frametab.length; i++)
+		{
+			if (frametab[i].state == PINNED)
+				continue;
+
+			// An empty frame is always the best choice
+			if (residentPid[i] == INVALID_PAGEID)
+			{
+				victim = i;
+				break;
+			}
+
+			boolean correlated = clock - last[i] <= crp;
+			if (victim == -1 || (victimCorrelated && !correlated)
+				|| (victimCorrelated == correlated && older(i, victim)))
+			{
+				victim = i;
+				victimCorrelated = correlated;
+			}
+		}
+
+		if (victim < 0)
+			return -1;
+
+		evict(victim, true);
+		frametab[victim].state = PINNED;
+		return victim;
+	}
+
+	/**
+	 * @return true if frame a should be replaced before frame b
+	 */
+	private boolean older(int a, int b)
+	{
+		long ka = hist[a][k - 1];
+		long kb = hist[b][k - 1];
+		if (ka != kb)
+			return ka < kb;
+		return hist[a][0] < hist[b][0];
+	}
+
+	/**
+	 * Adds K, the correlated reference period and the number of evicted pages
+	 * whose history is kept.
+	 * @param out - receives one entry per figure
+	 */
+	public void getDetails(Map<String, Long> out)
+	{
+		out.put("k", (long) k);
+		out.put("crp", crp);
+		out.put("retained", (long) retained.size());
+	}
+
+	/**
+	 * @desc - Prints out the name of the policy and the number of buffers being used
+	 * @param None
+	*/
+	public void printReplacerInfo()
+	{
+		System.out.println("+----------------------------------------+");
+		System.out.println("	The policy Being used is LRU-" + k + " ");
+		System.out.println("+----------------------------------------+");
+		System.out.println("	The number of buffers is: " + mgrArg.getNumBuffers());
+		System.out.println("+----------------------------------------+");
+	}
+
+}
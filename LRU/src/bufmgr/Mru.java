@@ -0,0 +1,143 @@
+package bufmgr;
+import global.*;
+import java.util.Map;
+
+/**
+ * @brief Implements the Most Recently Used Algorithm for page replacement.
+ * The victim is the frame that was released last, which is what a loop over
+ * a set of pages larger than the pool (e.g. a nested-loop join) wants: the
+ * pages at the start of the loop stay cached for the next pass.
+ */
+class Mru extends Replacer 
+{
+	// Constants that describe status of page, the same values BufMgr uses
+	protected static final int AVAILABLE = 10;
+	protected static final int REFERENCED = 11;
+	protected static final int PINNED = 12;
+	private BufMgr mgrArg;
+
+	/** @desc - frames holding no page, used before anything is evicted */
+	private FrameList free;
+	/** @desc - unpinned frames only, ordered from LRU (head) to MRU (tail) */
+	private FrameList unpinned;
+
+	public Mru(BufMgr mgrArg)
+	{
+		super(mgrArg);
+		this.mgrArg = mgrArg;
+
+		free = new FrameList(frametab.length);
+		unpinned = new FrameList(frametab.length);
+		for (int i = 0; i < frametab.length; i++) 
+		{
+			frametab[i].state = AVAILABLE;
+			free.addLast(i);
+		}
+	}
+
+	/**
+	 * Notifies the replacer of a pined page.
+	 * @param fdesc - frame descriptor object that contains details about a frame
+	 */
+	public void pinPage(FrameDesc fdesc) 
+	{
+		fdesc.state = PINNED;
+		free.remove(fdesc.index);
+		unpinned.remove(fdesc.index);
+	}
+
+	/**
+	 * Notifies the replacer of an unpinned page.
+	 */
+	public void unpinPage(FrameDesc fdesc) 
+	{
+		if (fdesc.getPinCount() == 0)
+		{
+			fdesc.state = REFERENCED;
+			unpinned.addLast(fdesc.index);
+		}
+	}
+
+	/**
+	 * Notifies the replacer of a free page.
+	 */
+	public void freePage(FrameDesc fdesc) 
+	{
+		fdesc.state = AVAILABLE;
+		unpinned.remove(fdesc.index);
+		free.addFirst(fdesc.index);
+	}
+
+	/**
+	 * Notifies the replacer of a frame that joined the pool; it is empty.
+	 */
+	public void addFrame(FrameDesc fdesc)
+	{
+		freePage(fdesc);
+	}
+
+	/**
+	 * Notifies the replacer of a frame that left the pool.
+	 */
+	public void removeFrame(FrameDesc fdesc)
+	{
+		fdesc.state = PINNED;
+		free.remove(fdesc.index);
+		unpinned.remove(fdesc.index);
+	}
+
+	/**
+	 * Notifies the replacer of a new page.
+	 */
+	public void newPage(FrameDesc fdesc) { }
+
+	/**
+	 * Selects a free frame if there is one, otherwise the most recently
+	 * released unpinned frame.
+	 * @return 	return the frame number return -1 if failed
+	*/
+	public int pickVictim() 
+	{
+		int victim = free.removeFirst();
+		if (victim == FrameList.NIL)
+			victim = unpinned.removeLast();
+		if (victim == FrameList.NIL)
+			return -1;
+
+		frametab[victim].state = PINNED;
+		return victim;
+	}
+
+	/**
+	 * Lists the unpinned frames from most to least recently used; empty
+	 * frames go first but have nothing to write.
+	 */
+	public int upcomingVictims(int out[], int n)
+	{
+		return unpinned.copyTo(out, n, false);
+	}
+
+	/**
+	 * Adds the number of empty frames and of unpinned frames holding a page.
+	 * @param out - receives one entry per figure
+	 */
+	public void getDetails(Map<String, Long> out)
+	{
+		out.put("free", (long) free.size());
+		out.put("unpinned", (long) unpinned.size());
+	}
+
+	/**
+	 * @desc - Prints out the name of the policy and the number of buffers being used
+	 * @param None
+	*/
+	public void printReplacerInfo()
+	{
+		System.out.println("+----------------------------------------+");
+		System.out.println("	The policy Being used is MRU ");
+		System.out.println("+----------------------------------------+");
+		System.out.println("	The number of buffers is: " + mgrArg.getNumBuffers());
+		System.out.println("+----------------------------------------+");
+	}
+
+}
@@ -0,0 +1,193 @@
+package bufmgr;
+
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * @brief Per-page access statistics in a fixed amount of memory: loads, hits
+ * and evictions of each page are counted in Count-Min sketches, and the pages
+ * with the most hits are kept by Space-Saving summaries, striped by page
+ * number so each one stays small to scan.
+ *
+ * Hits come from the lock-free pin path, so counting one takes no lock: the
+ * page number is appended to a ring picked by thread, and the rings are
+ * folded into the sketch and the summaries in batches, by whichever thread
+ * fills a ring and gets the drain lock without waiting, or by a report. A
+ * hit is dropped if its ring is full while another thread is draining.
+ * Reports are taken from copies and leave the counts as they are.
+ */
+class PageStats
+{
+	/** @desc - rows of each sketch */
+	protected static final int DEPTH = 4;
+	/** @desc - cells per row of each sketch */
+	protected static final int WIDTH = 1024;
+	/** @desc - number of Space-Saving stripes; a power of two */
+	protected static final int STRIPES = 16;
+	/** @desc - number of hit rings; a power of two */
+	protected static final int RINGS = 8;
+	/** @desc - hits each ring holds; a power of two */
+	protected static final int RING_SIZE = 256;
+	/** @desc - longs between two rings' counters, so they are on different cache lines */
+	private static final int PAD = 16;
+
+	/** @desc - times each page was read into the pool */
+	private CountMinSketch loads;
+	/** @desc - times each page was found in the pool */
+	private CountMinSketch hits;
+	/** @desc - times each page was evicted */
+	private CountMinSketch victims;
+	/** @desc - pages with the most hits, per stripe; guarded by drainLock */
+	private SpaceSaving hot[];
+
+	/** @desc - hits not yet counted, ring after ring; each slot holds page number + 1, or 0 if empty */
+	private AtomicIntegerArray pending;
+	/** @desc - hits appended to, and taken from, each ring since the start; PAD apart */
+	private AtomicLongArray appended;
+	private AtomicLongArray taken;
+	/** @desc - held while the rings are drained, and while the summaries are read */
+	private ReentrantLock drainLock = new ReentrantLock();
+
+	/**
+	 * Constructs empty statistics.
+	 * @param topK - the number of most hit pages to keep track of; each
+	 * stripe has this many counters, so they are found however they hash
+	 */
+	public PageStats(int topK)
+	{
+		loads = new CountMinSketch(DEPTH, WIDTH);
+		hits = new CountMinSketch(DEPTH, WIDTH);
+		victims = new CountMinSketch(DEPTH, WIDTH);
+		hot = new SpaceSaving[STRIPES];
+		for (int i = 0; i < STRIPES; i++)
+			hot[i] = new SpaceSaving(topK);
+		pending = new AtomicIntegerArray(RINGS * RING_SIZE);
+		appended = new AtomicLongArray(RINGS * PAD);
+		taken = new AtomicLongArray(RINGS * PAD);
+	}
+
+	/**
+	 * Gets the stripe tracking a page.
+	 */
+	private SpaceSaving stripe(int pid)
+	{
+		return hot[(pid * 0x85EBCA6B) >>> (32 - Integer.numberOfTrailingZeros(STRIPES))];
+	}
+
+	/**
+	 * Counts a read of a page into the pool.
+	 */
+	public void load(int pid)
+	{
+		loads.add(pid);
+	}
+
+	/**
+	 * Counts a pin of a page found in the pool. Takes no lock and never
+	 * waits; the count shows in the next report.
+	 */
+	public void hit(int pid)
+	{
+		int r = (int) Thread.currentThread().getId() & (RINGS - 1);
+		while (true)
+		{
+			long n = appended.get(r * PAD);
+			if (n - taken.get(r * PAD) >= RING_SIZE)
+			{
+				// the ring is full; drop the hit if somebody else is draining
+				if (!drain(false))
+					return;
+			}
+			else if (appended.compareAndSet(r * PAD, n, n + 1))
+			{
+				pending.set(r * RING_SIZE + (int) (n & (RING_SIZE - 1)), pid + 1);
+				if (n + 1 - taken.get(r * PAD) == RING_SIZE)
+					drain(false);
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Folds the hits in the rings into the sketch and the summaries.
+	 * @param wait - true to wait for a drain in progress, false to give up
+	 * @return false if it gave up
+	 */
+	private boolean drain(boolean wait)
+	{
+		if (wait)
+			drainLock.lock();
+		else if (!drainLock.tryLock())
+			return false;
+		try
+		{
+			for (int r = 0; r < RINGS; r++)
+			{
+				long n = taken.get(r * PAD);
+				long end = appended.get(r * PAD);
+				for (; n < end; n++)
+				{
+					int slot = r * RING_SIZE + (int) (n & (RING_SIZE - 1));
+					int v = pending.get(slot);
+					if (v == 0)
+						break; // claimed but not written yet; taken next time
+					pending.set(slot, 0);
+					hits.add(v - 1);
+					stripe(v - 1).offer(v - 1);
+				}
+				taken.set(r * PAD, n);
+			}
+			return true;
+		}
+		finally
+		{
+			drainLock.unlock();
+		}
+	}
+
+	/**
+	 * Counts an eviction of a page from the pool.
+	 */
+	public void victim(int pid)
+	{
+		victims.add(pid);
+	}
+
+	/**
+	 * Gets the pages with the most hits, most hit first. All counts are
+	 * estimates that may be a little high; a page's hits are the smaller of
+	 * its Space-Saving count and its sketch estimate.
+	 * @param k - the most pages to return
+	 * @return one row per page: { page number, loads, hits, evictions }
+	 */
+	public int[][] topPages(int k)
+	{
+		ArrayList<int[]> tracked = new ArrayList<int[]>();
+		drainLock.lock();
+		try
+		{
+			drain(true);
+			for (SpaceSaving s : hot)
+			{
+				int copy[][] = new int[s.size()][3];
+				s.copyTo(copy);
+				for (int t[] : copy)
+					tracked.add(t);
+			}
+		}
+		finally
+		{
+			drainLock.unlock();
+		}
+
+		ArrayList<int[]> rows = new ArrayList<int[]>();
+		for (int t[] : tracked)
+			rows.add(new int[] { t[0], loads.estimate(t[0]),
+				Math.min(t[1], hits.estimate(t[0])), victims.estimate(t[0]) });
+		rows.sort((a, b) -> Integer.compare(b[2], a[2])); // decreasing order
+		return rows.subList(0, Math.min(k, rows.size())).toArray(new int[0][]);
+	}
+
+} // class PageStats
@@ -0,0 +1,158 @@
+package bufmgr;
+
+/**
+ * @brief Maps page numbers to frame numbers with open addressing and linear
+ * probing over two parallel int arrays. Deletes shift the following entries
+ * of the probe run back instead of leaving tombstones, so lookups never slow
+ * down as pages come and go. The table is sized once from the pool size and
+ * never allocates afterwards.
+ */
+class PageTable
+{
+	/** @desc - marks an empty slot, and the result of a failed lookup */
+	protected static final int EMPTY = -1;
+
+	/** @desc - page number stored in each slot, EMPTY if none */
+	private int keys[];
+	/** @desc - frame number stored in each slot */
+	private int values[];
+	/** @desc - capacity - 1; the capacity is a power of two */
+	private int mask;
+	/** @desc - number of pages in the table */
+	private int size;
+
+	/**
+	 * Constructs a table for a buffer pool of the given size. The capacity is
+	 * at least twice the pool size, so probe runs stay short.
+	 * @param numFrames - the number of frames in the buffer pool
+	 */
+	public PageTable(int numFrames)
+	{
+		int capacity = Integer.highestOneBit(Math.max(2, numFrames) * 2 - 1) << 1;
+		keys = new int[capacity];
+		values = new int[capacity];
+		mask = capacity - 1;
+		clear();
+	}
+
+	/**
+	 * Removes every page from the table.
+	 */
+	public void clear()
+	{
+		for (int i = 0; i < keys.length; i++)
+			keys[i] = EMPTY;
+		size = 0;
+	}
+
+	/**
+	 * Spreads the page number so consecutive pages do not form one long run.
+	 */
+	private int slot(int pid)
+	{
+		int h = pid * 0x9E3779B9;
+		return (h ^ (h >>> 16)) & mask;
+	}
+
+	/**
+	 * Looks up the frame holding a page.
+	 * @param pid - the page number
+	 * @return the frame number, or EMPTY if the page is not in the table
+	 */
+	public int get(int pid)
+	{
+		for (int i = slot(pid); ; i = (i + 1) & mask)
+		{
+			int key = keys[i];
+			if (key == pid)
+				return values[i];
+			if (key == EMPTY)
+				return EMPTY;
+		}
+	}
+
+	/**
+	 * Looks up the frame holding a page without any lock, while other threads
+	 * may be changing the table. The probe is bounded, and the answer may be
+	 * stale or wrong, so the caller must check that the frame it names really
+	 * holds the page.
+	 * @param pid - the page number
+	 * @return a frame number, or EMPTY if the page was not seen
+	 */
+	public int find(int pid)
+	{
+		int i = slot(pid);
+		for (int n = 0; n <= mask; n++, i = (i + 1) & mask)
+		{
+			int key = keys[i];
+			if (key == pid)
+				return values[i];
+			if (key == EMPTY)
+				return EMPTY;
+		}
+		return EMPTY;
+	}
+
+	/**
+	 * Maps a page to a frame, replacing any previous mapping of the page.
+	 * @param pid - the page number
+	 * @param frameNo - the frame number
+	 */
+	public void put(int pid, int frameNo)
+	{
+		int i = slot(pid);
+		while (keys[i] != EMPTY && keys[i] != pid)
+			i = (i + 1) & mask;
+
+		if (keys[i] == EMPTY)
+		{
+			if (size + 1 > mask)
+				throw new IllegalStateException("Page table full");
+			keys[i] = pid;
+			size++;
+		}
+		values[i] = frameNo;
+	}
+
+	/**
+	 * Removes a page from the table. Entries after it in the same probe run
+	 * are shifted back when they may move closer to their home slot.
+	 * @param pid - the page number
+	 * @return the frame number it was mapped to, or EMPTY if it was not there
+	 */
+	public int remove(int pid)
+	{
+		int i = slot(pid);
+		while (keys[i] != pid)
+		{
+			if (keys[i] == EMPTY)
+				return EMPTY;
+			i = (i + 1) & mask;
+		}
+		int frameNo = values[i];
+
+		// Backward shift: fill the hole with a later entry whose home slot
+		// does not lie (cyclically) between the hole and that entry
+		int hole = i;
+		for (int j = (hole + 1) & mask; keys[j] != EMPTY; j = (j + 1) & mask)
+		{
+			int home = slot(keys[j]);
+			if (((j - home) & mask) >= ((j - hole) & mask))
+			{
+				keys[hole] = keys[j];
+				values[hole] = values[j];
+				hole = j;
+			}
+		}
+		keys[hole] = EMPTY;
+		size--;
+		return frameNo;
+	}
+
+	/** @return the number of pages in the table */
+	public int size()
+	{
+		return size;
+	}
+
+} // class PageTable
@@ -0,0 +1,318 @@
+package bufmgr;
+import java.util.ArrayDeque;
+
+/*
+ * @brief Sequential read-ahead. The buffer manager reports its misses, and its
+ * hits on pages read ahead, to this detector, which follows a few streams of
+ * consecutive page numbers at once. Once a stream has read TRIGGER pages in a
+ * row, a window of the pages after it is queued, and a daemon thread reads
+ * them into the pool unpinned. The first page of each window is its marker:
+ * when the stream gets there the next window is queued, so reading stays one
+ * window ahead of the scan. A window doubles each time, up to the largest
+ * allowed, and is halved when one of its pages is evicted before it is used.
+ *
+ * The same thread reads the pages callers ask for with BufMgr.prefetch. With
+ * a largest window of 0 it does only that, and follows no streams.
+ */
+class ReadAhead extends Thread
+{
+    /** @brief - consecutive pages a stream reads before it is read ahead */
+    static final int TRIGGER = 3;
+
+    /** @brief - size of a stream's first window, in pages */
+    static final int INITIAL_WINDOW = 4;
+
+    /** @brief - number of streams followed at once */
+    static final int MAX_STREAMS = 8;
+
+    /** @brief - most page lists waiting to be read; later ones are dropped */
+    static final int MAX_QUEUED = 4 * MAX_STREAMS;
+
+    /** @brief - the buffer manager pages are read into */
+    private BufMgr mgr;
+
+    /** @brief - largest window, in pages; 0 if streams are not followed */
+    private int maxWindow;
+
+    /** @brief - per stream: the last page it read, -2 for an unused slot */
+    private int[] last = new int[MAX_STREAMS];
+
+    /** @brief - per stream: number of consecutive pages it read */
+    private int[] run = new int[MAX_STREAMS];
+
+    /** @brief - per stream: first page of its last window, -1 if none yet */
+    private int[] mark = new int[MAX_STREAMS];
+
+    /** @brief - per stream: first page after its last window */
+    private int[] next = new int[MAX_STREAMS];
+
+    /** @brief - per stream: size of its last window */
+    private int[] window = new int[MAX_STREAMS];
+
+    /** @brief - per stream: a page of its last window was evicted unused */
+    private boolean[] wasted = new boolean[MAX_STREAMS];
+
+    /** @brief - per stream: time of its last page, to replace the oldest */
+    private long[] used = new long[MAX_STREAMS];
+
+    /** @brief - logical clock, advanced on every page reported */
+    private long clock = 0;
+
+    /** @brief - windows and prefetch requests waiting to be read, as lists of page numbers */
+    private ArrayDeque<int[]> queue = new ArrayDeque<int[]>();
+
+    /** @brief - set to make the thread finish; read between pages without the lock */
+    private volatile boolean stopped = false;
+
+    /** @brief - pages read ahead, and of those used and evicted unused */
+    private long numRead = 0;
+    private long numUseful = 0;
+    private long numWasted = 0;
+
+    /**
+     * @brief - guards everything above and wakes the thread. The thread is
+     * never interrupted: an interrupt during FileChannel I/O would close the
+     * channel.
+     */
+    private final Object lock = new Object();
+
+    /**
+     * Constructs a read-ahead thread; call start() to run it.
+     * @param mgr buffer manager the pages are read into
+     * @param maxWindow largest number of pages read ahead at once per stream,
+     * or 0 to only read the pages asked for with prefetch
+     */
+    ReadAhead(BufMgr mgr, int maxWindow)
+    {
+        super("bufmgr-readahead");
+        setDaemon(true);
+        this.mgr = mgr;
+        this.maxWindow = maxWindow;
+        for(int s = 0; s < MAX_STREAMS; s++)
+            last[s] = -2;
+    }
+
+    /**
+     * @brief - Reports a page the buffer manager had to read, or a page read
+     * ahead that was just pinned for the first time. Queues the next window of
+     * the page's stream if it is due.
+     * @param pid the page number
+     * @param prefetched true if the page was read ahead
+     */
+    void access(int pid, boolean prefetched)
+    {
+        synchronized(lock)
+        {
+            if(prefetched)
+                numUseful++;
+            if(maxWindow == 0)
+                return;
+
+            int s = streamOf(pid);
+            if(s < 0)
+            {
+                startStream(pid);
+                return;
+            }
+            used[s] = ++clock;
+            if(pid == last[s])
+                return;
+            last[s] = pid;
+            run[s]++;
+
+            if(mark[s] < 0 && run[s] >= TRIGGER)
+                queueWindow(s, pid + 1);
+            else if(mark[s] >= 0 && pid >= mark[s])
+                queueWindow(s, Math.max(next[s], pid + 1));
+        }
+    }
+
+    /**
+     * @brief - Queues pages to be read in the given order.
+     * @return false if too many requests are waiting and this one was dropped
+     */
+    boolean prefetch(int[] pids)
+    {
+        synchronized(lock)
+        {
+            if(queue.size() >= MAX_QUEUED)
+                return false;
+            queue.addLast(pids);
+            lock.notifyAll();
+            return true;
+        }
+    }
+
+    /**
+     * @brief - Reports a page read ahead that was evicted or freed before
+     * anyone pinned it. Its stream's next window is smaller.
+     */
+    void wasted(int pid)
+    {
+        synchronized(lock)
+        {
+            numWasted++;
+            for(int s = 0; s < MAX_STREAMS; s++)
+            {
+                if(mark[s] >= 0 && pid >= mark[s] && pid < next[s])
+                    wasted[s] = true;
+            }
+        }
+    }
+
+    /**
+     * @brief - Finds the stream a page continues: the page right after the
+     * stream's last one, or any later page it has read ahead already (pages
+     * found in the pool are not reported, so a scan may skip some).
+     * @return the stream, or -1 if the page starts a new one
+     */
+    private int streamOf(int pid)
+    {
+        for(int s = 0; s < MAX_STREAMS; s++)
+        {
+            if(pid >= last[s] && (pid <= last[s] + 1 || pid < next[s]))
+                return s;
+        }
+        return -1;
+    }
+
+    /**
+     * @brief - Starts following a new stream at the given page, in place of
+     * the stream that went longest without a page.
+     */
+    private void startStream(int pid)
+    {
+        int s = 0;
+        for(int k = 1; k < MAX_STREAMS; k++)
+        {
+            if(used[k] < used[s])
+                s = k;
+        }
+        used[s] = ++clock;
+        last[s] = pid;
+        run[s] = 1;
+        mark[s] = -1;
+        next[s] = pid + 1;
+        window[s] = Math.min(INITIAL_WINDOW, maxWindow);
+        wasted[s] = false;
+    }
+
+    /**
+     * @brief - Sizes a stream's next window from how the last one went and
+     * queues it, unless too many windows are waiting already.
+     */
+    private void queueWindow(int s, int from)
+    {
+        if(mark[s] >= 0)
+            window[s] = wasted[s] ? Math.max(1, window[s] / 2) : Math.min(maxWindow, window[s] * 2);
+        wasted[s] = false;
+        mark[s] = from;
+        next[s] = from + window[s];
+
+        if(queue.size() < MAX_STREAMS)
+        {
+            int[] pids = new int[window[s]];
+            for(int k = 0; k < pids.length; k++)
+                pids[k] = from + k;
+            queue.addLast(pids);
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * @brief - Reads the queued page lists until stopped. A list is cut short
+     * when a page can not be read without writing a dirty victim, or lies
+     * past the end of the database.
+     */
+    public void run()
+    {
+        while(true)
+        {
+            int[] pids;
+            synchronized(lock)
+            {
+                while(!stopped && queue.isEmpty())
+                {
+                    try
+                    {
+                        lock.wait();
+                    }
+
+                    catch(InterruptedException e)
+                    {
+                        // only shutdown stops the thread; a stray interrupt just waits again
+                    }
+                }
+                if(stopped)
+                    return;
+                pids = queue.removeFirst();
+            }
+
+            for(int pid : pids)
+            {
+                if(stopped)
+                    return;
+                int result = mgr.readAheadPage(pid);
+                if(result < 0)
+                    break;
+                if(result > 0)
+                {
+                    synchronized(lock)
+                    {
+                        numRead++;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @brief - Stops the thread and waits for it to finish the page it is reading.
+     */
+    void shutdown()
+    {
+        synchronized(lock)
+        {
+            stopped = true;
+            queue.clear();
+            lock.notifyAll();
+        }
+        try
+        {
+            join();
+        }
+
+        catch(InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** @brief - Gets the number of pages read ahead. */
+    long getNumRead()
+    {
+        synchronized(lock)
+        {
+            return numRead;
+        }
+    }
+
+    /** @brief - Gets the number of pages read ahead that were then pinned. */
+    long getNumUseful()
+    {
+        synchronized(lock)
+        {
+            return numUseful;
+        }
+    }
+
+    /** @brief - Gets the number of pages read ahead that were evicted unused. */
+    long getNumWasted()
+    {
+        synchronized(lock)
+        {
+            return numWasted;
+        }
+    }
+
+} // class ReadAhead extends Thread
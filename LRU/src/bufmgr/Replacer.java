@@ -1,6 +1,7 @@
 package bufmgr;
 
 import global.GlobalConst;
+import java.util.Map;
 
 /**
  * @brief Base class for buffer pool replacement policies.
@@ -29,11 +30,47 @@ abstract class Replacer implements GlobalConst {
    */
   public abstract void freePage(FrameDesc fdesc);
 
+  /**
+   * Notifies the replacer that a page no longer in the pool was deallocated,
+   * so whatever it remembers of the page's past can go. The default does
+   * nothing.
+   * 
+   * @param pid the page number
+   */
+  public void freeEvictedPage(int pid) {
+  }
+
+  /**
+   * Notifies the replacer that an empty frame joined the pool; the buffer
+   * manager's count of buffers already includes it.
+   */
+  public abstract void addFrame(FrameDesc fdesc);
+
+  /**
+   * Notifies the replacer that a frame left the pool, or that it is loading
+   * a page the policy did not choose (a scan ring's or a hinted victim), in
+   * which case pinning the new page brings it back. It may still hold its
+   * old page for a moment, but must not be picked again. When it left the
+   * pool, the buffer manager's count of buffers already leaves it out.
+   */
+  public abstract void removeFrame(FrameDesc fdesc);
+
   /**
    * Notifies the replacer of a pined page.
    */
   public abstract void pinPage(FrameDesc fdesc);
 
+  /**
+   * Notifies the replacer of a page read ahead into the pool, which it is to
+   * treat as pinned until unpinPage. Reading the page ahead is not a
+   * reference to it: the policy should take the next pinPage of the page as
+   * its first reference, not as a second one. The default treats it as a
+   * pin, which is the same for policies that do not count references.
+   */
+  public void prefetchPage(FrameDesc fdesc) {
+    pinPage(fdesc);
+  }
+
   /**
    * Notifies the replacer of an unpinned page.
    */
@@ -46,6 +83,28 @@ abstract class Replacer implements GlobalConst {
    */
   public abstract int pickVictim();
 
+  /**
+   * Lists unpinned frames in the order they are likely to be picked as
+   * victims, so the background writer can clean them first. The default
+   * lists nothing, and the writer then sweeps the frames in turn.
+   * 
+   * @param out receives the frame numbers, after the n already there
+   * @param n number of entries already in out
+   * @return the number of entries in out afterwards
+   */
+  public int upcomingVictims(int[] out, int n) {
+    return n;
+  }
+
+  /**
+   * Adds figures about the policy's own state, such as the sizes of its
+   * lists, for monitoring. The default adds nothing.
+   * 
+   * @param out receives one entry per figure
+   */
+  public void getDetails(Map<String, Long> out) {
+  }
+
   public abstract void printReplacerInfo();
 
 } // abstract class Replacer implements GlobalConst
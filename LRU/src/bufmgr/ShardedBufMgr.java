@@ -0,0 +1,435 @@
+package bufmgr;
+import global.Minibase;
+import global.Page;
+import global.PageId;
+import java.util.HashMap;
+import java.util.Map;
+
+/*
+ * @brief A buffer manager made of several independent buffer pools (shards).
+ * Every page belongs to one shard, chosen by hashing its page number, and each
+ * shard has its own frame table, page table and replacer. Threads working on
+ * pages of different shards never meet on a replacer lock, and each replacer
+ * only keeps track of its own share of the frames.
+ *
+ * It offers the same public API as BufMgr and can be installed as
+ * Minibase.BufferManager. Hit and load counts are summed over the shards when
+ * they are printed. Read-ahead is done here rather than per shard, since a
+ * shard only sees every few pages of a sequential scan.
+ */
+public class ShardedBufMgr extends BufMgr
+{
+    /** @brief - system property giving the number of shards */
+    public static final String SHARDS_PROPERTY = "bufmgr.shards";
+
+    /** @brief - the sub-pools; page pid lives in shards[shardOf(pid)] */
+    protected BufMgr[] shards;
+
+    /**
+     * @brief - A scan ring made of one ring per shard, since a ring holds frame
+     * numbers and those only mean something within one shard.
+     */
+    private static class ShardedRing extends BufferRing
+    {
+        /** @brief - the ring used in each shard, null where the scan goes through normally */
+        private BufferRing[] parts;
+
+        ShardedRing(BufferRing[] parts)
+        {
+            super(1);
+            this.parts = parts;
+        }
+    }
+
+    /**
+     * Constructs a sharded buffer manager. The number of shards is read from
+     * the bufmgr.shards system property (one per core by default), and the
+     * replacement policy from bufmgr.replacer (Lru by default).
+     * @param numbufs number of buffers in all the shards together
+     */
+    public ShardedBufMgr(int numbufs)
+    {
+        this(numbufs, Integer.getInteger(SHARDS_PROPERTY, Runtime.getRuntime().availableProcessors()),
+            System.getProperty(REPLACER_PROPERTY, "Lru"));
+    }
+
+    /**
+     * Constructs a sharded buffer manager.
+     * @param numbufs number of buffers in all the shards together
+     * @param numShards number of shards; the buffers are spread over them as
+     * evenly as they divide, as in resize
+     * @param replacerArg name of the replacement policy every shard uses
+     * @throws IllegalArgumentException if the policy is unknown
+     */
+    public ShardedBufMgr(int numbufs, int numShards, String replacerArg)
+    {
+        numShards = Math.max(1, Math.min(numShards, numbufs));
+        int maxbufs = Integer.getInteger(MAX_BUFFERS_PROPERTY, DEFAULT_GROWTH * numbufs);
+        shards = new BufMgr[numShards];
+        numberOfBuffers = 0;
+        for(int i = 0; i < numShards; i++)
+        {
+            shards[i] = new BufMgr(share(numbufs, i), share(maxbufs, i), replacerArg);
+            numberOfBuffers += shards[i].getNumBuffers();
+            shards[i].stopReadAhead();
+        }
+        replacerName = shards[0].replacerName;
+
+        // one set of page statistics and counters; every page belongs to one
+        // shard, so their counts never overlap, and only this one is registered
+        for(BufMgr s : shards)
+        {
+            s.pageStats = pageStats;
+            s.metrics = metrics;
+            s.unregisterMBean();
+        }
+
+        int maxWindow = Integer.getInteger(READAHEAD_PROPERTY, 0);
+        if(maxWindow > 0)
+            startReadAhead(maxWindow);
+
+        if(Boolean.getBoolean(JMX_PROPERTY))
+            registerMBean();
+    }
+
+    /**
+     * @brief - Gets the number of the shard holding the given page. The hash
+     * keeps a run of consecutive pages spread over the shards, and uses other
+     * bits than the page table partitions inside each shard do.
+     */
+    protected int shardOf(int pid)
+    {
+        int h = pid * 0x9E3779B9;
+        return (h >>> 16) % shards.length;
+    }
+
+    /**
+     * @brief - Gets the shard holding the given page.
+     */
+    protected BufMgr shard(PageId pageno)
+    {
+        return shards[shardOf(pageno.pid)];
+    }
+
+    /**
+     * Gets the number of shards.
+     */
+    public int getNumShards()
+    {
+        return shards.length;
+    }
+
+    /**
+     * Allocates a set of new pages, and pins the first one in its shard.
+     * @param firstpg holds the contents of the first page
+     * @param run_size number of pages to allocate
+     * @return page id of the first new page
+     * @throws IllegalArgumentException if PIN_MEMCPY and the page is pinned
+     * @throws IllegalStateException if all pages are pinned (i.e. pool exceeded)
+     */
+    public PageId newPage(Page firstpg, int run_size)
+    {
+        // Initialize BHR variables
+        for(BufMgr s : shards)
+            s.resetBhrCounts();
+
+        PageId firstpgid;
+        synchronized(allocLock)
+        {
+            firstpgid = Minibase.DiskManager.allocate_page(run_size);
+        }
+        return shard(firstpgid).pinNewRun(firstpgid, firstpg, run_size);
+    }
+
+    /**
+     * Deallocates a single page from disk, freeing it from its shard if needed.
+     * @param pageno identifies the page to remove
+     * @throws IllegalArgumentException if the page is pinned
+     */
+    public void freePage(PageId pageno)
+    {
+        shard(pageno).freePage(pageno);
+    }
+
+    /**
+     * @brief - Pins a disk page into its shard.
+     * @see BufMgr#pinPage(PageId, Page, boolean)
+     */
+    public void pinPage(PageId pageno, Page page, boolean skipRead)
+    {
+        shard(pageno).pinPage(pageno, page, skipRead);
+    }
+
+    /**
+     * @brief - Pins a disk page into its shard, with an access hint.
+     * @see BufMgr#pinPage(PageId, Page, boolean, AccessHint)
+     */
+    public void pinPage(PageId pageno, Page page, boolean skipRead, AccessHint hint)
+    {
+        shard(pageno).pinPage(pageno, page, skipRead, hint);
+    }
+
+    /**
+     * @brief - Pins a disk page into its shard on behalf of a bulk scan, using
+     * the scan's ring for that shard.
+     * @param ring the scan's ring, from this buffer manager's getScanRing
+     * @see BufMgr#pinPage(PageId, Page, boolean, BufferRing)
+     */
+    public void pinPage(PageId pageno, Page page, boolean skipRead, BufferRing ring)
+    {
+        int s = shardOf(pageno.pid);
+        BufferRing part = (ring instanceof ShardedRing) ? ((ShardedRing) ring).parts[s] : null;
+        shards[s].pinPage(pageno, page, skipRead, part);
+    }
+
+    /**
+     * Pins a run of pages with consecutive page numbers. Consecutive pages
+     * live in different shards, so each is pinned in its shard on its own.
+     * @see BufMgr#pinRun(PageId, int, Page[])
+     */
+    public void pinRun(PageId firstid, int count, Page[] out)
+    {
+        if(count < 0 || out.length < count)
+            throw new IllegalArgumentException("Invalid page run");
+
+        int k = 0;
+        try
+        {
+            for(; k < count; k++)
+            {
+                PageId pageno = new PageId(firstid.pid + k);
+                shard(pageno).pinPage(pageno, out[k], PIN_DISKIO);
+            }
+        }
+
+        catch(RuntimeException e)
+        {
+            // give back the pages pinned so far
+            for(int j = 0; j < k; j++)
+                unpinPage(new PageId(firstid.pid + j), UNPIN_CLEAN);
+            throw e;
+        }
+    }
+
+    /**
+     * @brief - Gets a ring for a sequential scan over the given number of pages,
+     * or null if the scan is small enough to go through the pool normally.
+     * Each shard sees its share of the pages and decides on its own ring.
+     * @param numPages number of pages the scan will read
+     */
+    public BufferRing getScanRing(int numPages)
+    {
+        BufferRing[] parts = new BufferRing[shards.length];
+        boolean any = false;
+        for(int i = 0; i < shards.length; i++)
+        {
+            parts[i] = shards[i].getScanRing(numPages / shards.length);
+            any |= (parts[i] != null);
+        }
+        return any ? new ShardedRing(parts) : null;
+    }
+
+    /**
+     * Unpins a disk page from its shard, decreasing its pin count.
+     * @param pageno identifies the page to unpin
+     * @param dirty UNPIN_DIRTY if the page was modified, UNPIN_CLEAN otherrwise
+     * @throws IllegalArgumentException if the page is not present or not pinned
+     */
+    public void unpinPage(PageId pageno, boolean dirty)
+    {
+        shard(pageno).unpinPage(pageno, dirty);
+    }
+
+    /**
+     * Immediately writes a page in the buffer pool to disk, if dirty.
+     */
+    public void flushPage(PageId pageno)
+    {
+        if(pageno == null)
+            flushAllPages();
+        else
+            shard(pageno).flushPage(pageno);
+    }
+
+    /**
+     * Immediately writes all dirty pages in every shard to disk.
+     */
+    public void flushAllPages()
+    {
+        for(BufMgr s : shards)
+            s.flushAllPages();
+    }
+
+    /**
+     * Starts a background writer in every shard.
+     * @see BufMgr#startBackgroundWriter(long, int)
+     */
+    public synchronized void startBackgroundWriter(long intervalMillis, int batchSize)
+    {
+        for(BufMgr s : shards)
+            s.startBackgroundWriter(intervalMillis, batchSize);
+    }
+
+    /**
+     * Stops the background writer of every shard.
+     */
+    public synchronized void stopBackgroundWriter()
+    {
+        for(BufMgr s : shards)
+            s.stopBackgroundWriter();
+    }
+
+    /**
+     * @brief - Installs one read-ahead thread for all the shards: each shard
+     * reports its pins to it, and it reads each page into the page's shard.
+     */
+    protected void useReadAhead(ReadAhead ra)
+    {
+        readAhead = ra;
+        for(BufMgr s : shards)
+            s.readAhead = ra;
+    }
+
+    /**
+     * @brief - Installs one trace for all the shards, so the calls made to
+     * every shard are recorded in the order they are made.
+     */
+    protected void useTrace(TraceRecorder tr)
+    {
+        trace = tr;
+        for(BufMgr s : shards)
+            s.trace = tr;
+    }
+
+    /**
+     * @brief - Reads a page ahead into its shard.
+     */
+    int readAheadPage(int pid)
+    {
+        return shards[shardOf(pid)].readAheadPage(pid);
+    }
+
+    /**
+     * Gets the total number of buffer frames in all the shards.
+     */
+    public int getNumBuffers()
+    {
+        return numberOfBuffers;
+    }
+
+    /**
+     * Changes the total number of buffer frames while the pool is in use,
+     * spreading them evenly over the shards.
+     * @param numbufs the new number of buffers, at least one per shard
+     * @return the number of buffers the shards have now
+     * @throws IllegalArgumentException if a shard can not have its share
+     * @see BufMgr#resize(int)
+     */
+    public synchronized int resize(int numbufs)
+    {
+        // check every share first, so the shards are not left half resized
+        for(int i = 0; i < shards.length; i++)
+        {
+            int share = share(numbufs, i);
+            if(share < 1 || share > shards[i].frametab.length)
+                throw new IllegalArgumentException("Invalid number of buffers");
+        }
+
+        int total = 0;
+        for(int i = 0; i < shards.length; i++)
+            total += shards[i].resize(share(numbufs, i));
+        numberOfBuffers = total;
+        return total;
+    }
+
+    /**
+     * @brief - Gets the number of buffers shard i has when all the shards
+     * together have numbufs.
+     */
+    private int share(int numbufs, int i)
+    {
+        return numbufs / shards.length + ((i < numbufs % shards.length) ? 1 : 0);
+    }
+
+    /**
+     * Gets the number of dirty buffer frames in all the shards.
+     */
+    public int getNumDirty()
+    {
+        int numDirty = 0;
+        for(BufMgr s : shards)
+            numDirty += s.getNumDirty();
+        return numDirty;
+    }
+
+    /**
+     * Gets the total number of unpinned buffer frames in all the shards.
+     */
+    public int getNumUnpinned()
+    {
+        int numUnpinned = 0;
+        for(BufMgr s : shards)
+            numUnpinned += s.getNumUnpinned();
+        return numUnpinned;
+    }
+
+    /**
+     * Gets the total number of buffer frames holding no page in all the shards.
+     */
+    public int getNumFree()
+    {
+        int numFree = 0;
+        for(BufMgr s : shards)
+            numFree += s.getNumFree();
+        return numFree;
+    }
+
+    /**
+     * @brief - Adds the replacement policy figures of every shard, each
+     * prefixed with its shard, as in shard0.unpinned.
+     */
+    protected void replacerDetails(Map<String, Long> out)
+    {
+        for(int i = 0; i < shards.length; i++)
+        {
+            Map<String, Long> part = new HashMap<String, Long>();
+            shards[i].replacerDetails(part);
+            for(Map.Entry<String, Long> e : part.entrySet())
+                out.put("shard" + i + "." + e.getKey(), e.getValue());
+        }
+    }
+
+    /**
+     * @brief - Prints the replacement policy of each shard.
+     */
+    protected void printReplacerInfo()
+    {
+        for(int i = 0; i < shards.length; i++)
+        {
+            System.out.println("	Shard " + i + " of " + shards.length);
+            shards[i].printReplacerInfo();
+        }
+    }
+
+    /**
+     * @brief Prints the BHR, page hits and load requests summed over all the
+     * shards, with the page statistics they share, and outputs them to a file
+     * and the console.
+     */
+    public void printBhrAndRefCount()
+    {
+        totPageHits = 0;
+        totPageRequests = 0;
+        pageLoadHits = 0;
+        pageLoadRequests = 0;
+        for(BufMgr s : shards)
+        {
+            totPageHits += s.totPageHits;
+            totPageRequests += s.totPageRequests;
+            pageLoadHits += s.pageLoadHits;
+            pageLoadRequests += s.pageLoadRequests;
+        }
+        super.printBhrAndRefCount();
+    }
+
+} // public class ShardedBufMgr extends BufMgr
@@ -0,0 +1,95 @@
+package bufmgr;
+
+/**
+ * @brief Keeps the most frequent page numbers of a stream with a fixed number
+ * of counters (the Space-Saving algorithm). A page that is not tracked while
+ * every counter is taken replaces the page with the smallest count, and
+ * inherits that count as its possible error. Any page seen more than
+ * total / capacity times is sure to be tracked. Not thread-safe; the caller
+ * locks.
+ */
+class SpaceSaving
+{
+	/** @desc - page tracked by each counter */
+	private int keys[];
+	/** @desc - count of each counter; never less than its page's true count */
+	private int counts[];
+	/** @desc - how much of each count may belong to the pages it replaced */
+	private int errors[];
+	/** @desc - number of counters in use */
+	private int size;
+	/** @desc - maps each tracked page to its counter */
+	private PageTable index;
+
+	/**
+	 * Constructs an empty summary.
+	 * @param capacity - the number of counters
+	 */
+	public SpaceSaving(int capacity)
+	{
+		if (capacity < 1)
+			throw new IllegalArgumentException("Invalid capacity");
+		keys = new int[capacity];
+		counts = new int[capacity];
+		errors = new int[capacity];
+		size = 0;
+		index = new PageTable(capacity);
+	}
+
+	/**
+	 * Counts one more occurrence of a page.
+	 * @param key - the page number
+	 */
+	public void offer(int key)
+	{
+		int i = index.get(key);
+		if (i == PageTable.EMPTY)
+		{
+			if (size < keys.length)
+			{
+				i = size++;
+				counts[i] = 0;
+				errors[i] = 0;
+			}
+			else
+			{
+				// take over the counter with the smallest count
+				i = 0;
+				for (int j = 1; j < size; j++)
+				{
+					if (counts[j] < counts[i])
+						i = j;
+				}
+				index.remove(keys[i]);
+				errors[i] = counts[i];
+			}
+			keys[i] = key;
+			index.put(key, i);
+		}
+		counts[i]++;
+	}
+
+	/**
+	 * Gets the number of pages tracked.
+	 */
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 * Copies the tracked pages out, in no particular order.
+	 * @param out - receives { page number, count, error } per tracked page;
+	 * must hold size() rows
+	 */
+	public void copyTo(int out[][])
+	{
+		for (int i = 0; i < size; i++)
+		{
+			out[i][0] = keys[i];
+			out[i][1] = counts[i];
+			out[i][2] = errors[i];
+		}
+	}
+
+} // class SpaceSaving
@@ -0,0 +1,187 @@
+package bufmgr;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.WeakHashMap;
+
+/*
+ * @brief Records the calls made to a buffer manager (pins, unpins, new pages
+ * and freed pages) as a compact binary trace, for TraceReplayer to run again
+ * against other policies and pool sizes.
+ *
+ * The trace starts with MAGIC and VERSION (an int and a byte). Then comes one
+ * record per call: a byte holding the operation in its low bits, FLAG for a
+ * pin with PIN_MEMCPY or an unpin with UNPIN_DIRTY, and for a pin its
+ * AccessHint and whether it used a BufferRing; the difference from the page
+ * number of the record before, zigzag encoded; the nanoseconds since the
+ * record before; for a new run, its size; and for a pin with a ring, the
+ * ring's number in the trace and its size. Numbers after the first byte
+ * are unsigned varints, 7 bits a byte, low bits first, so a call in a scan
+ * or on the page just used takes three or four bytes.
+ *
+ * Pages read ahead, whether noticed by read-ahead or asked for with
+ * prefetch, are not recorded.
+ */
+class TraceRecorder
+{
+    /** @brief - first four bytes of a trace, "BMTR" */
+    static final int MAGIC = 0x424D5452;
+
+    /** @brief - version of the format */
+    static final int VERSION = 2;
+
+    /** @brief - operations */
+    static final int PIN = 1;
+    static final int UNPIN = 2;
+    static final int NEW = 3;
+    static final int FREE = 4;
+
+    /** @brief - operation bits of a record's first byte */
+    static final int OP_MASK = 7;
+
+    /** @brief - set for a pin with PIN_MEMCPY, or an unpin with UNPIN_DIRTY */
+    static final int FLAG = 8;
+
+    /** @brief - where a pin's AccessHint ordinal is kept in the first byte */
+    static final int HINT_SHIFT = 4;
+    static final int HINT_MASK = 3 << HINT_SHIFT;
+
+    /** @brief - set for a pin with a BufferRing */
+    static final int RING = 64;
+
+    /** @brief - where the trace goes */
+    private DataOutputStream out;
+
+    /** @brief - page number and time of the last record */
+    private int lastPid = 0;
+    private long lastTime;
+
+    /** @brief - the first write that failed; nothing is recorded after it */
+    private IOException failure;
+
+    /** @brief - number of each ring seen, from 1; rings no longer used are let go */
+    private WeakHashMap<BufferRing, Integer> rings = new WeakHashMap<BufferRing, Integer>();
+    private int numRings = 0;
+
+    /**
+     * Constructs a recorder and writes the trace header.
+     * @param out where the trace goes; closed by close
+     * @throws IOException if the header can not be written
+     */
+    TraceRecorder(OutputStream out) throws IOException
+    {
+        this.out = new DataOutputStream(new BufferedOutputStream(out, 1 << 16));
+        this.out.writeInt(MAGIC);
+        this.out.writeByte(VERSION);
+        lastTime = System.nanoTime();
+    }
+
+    /** @brief - Records a pin with no hint and no ring. */
+    void pin(int pid, boolean skipRead)
+    {
+        pin(pid, skipRead, AccessHint.NORMAL, null);
+    }
+
+    /** @brief - Records a pin. */
+    void pin(int pid, boolean skipRead, AccessHint hint, BufferRing ring)
+    {
+        int op = PIN | (skipRead ? FLAG : 0) | (hint.ordinal() << HINT_SHIFT);
+        if(ring == null)
+            record(op, pid, -1, null);
+        else
+            record(op | RING, pid, -1, ring);
+    }
+
+    /** @brief - Records an unpin. */
+    void unpin(int pid, boolean dirty)
+    {
+        record(UNPIN | (dirty ? FLAG : 0), pid, -1, null);
+    }
+
+    /** @brief - Records the allocation of a run of new pages. */
+    void newRun(int firstpid, int runSize)
+    {
+        record(NEW, firstpid, runSize, null);
+    }
+
+    /** @brief - Records the freeing of a page. */
+    void free(int pid)
+    {
+        record(FREE, pid, -1, null);
+    }
+
+    /**
+     * @brief - Writes one record; calls from several threads are recorded
+     * in the order they get here.
+     * @param arg the run size of a new run, -1 for other operations
+     * @param ring the ring of a pin with RING, null for other records
+     */
+    private synchronized void record(int op, int pid, int arg, BufferRing ring)
+    {
+        if(failure != null)
+            return;
+        try
+        {
+            long now = System.nanoTime();
+            int delta = pid - lastPid;
+            out.writeByte(op);
+            writeVarint(((delta << 1) ^ (delta >> 31)) & 0xFFFFFFFFL);
+            writeVarint(Math.max(0, now - lastTime));
+            if(arg >= 0)
+                writeVarint(arg);
+            if(ring != null)
+            {
+                Integer id = rings.get(ring);
+                if(id == null)
+                {
+                    id = ++numRings;
+                    rings.put(ring, id);
+                }
+                writeVarint(id);
+                writeVarint(ring.size());
+            }
+            lastPid = pid;
+            lastTime = now;
+        }
+
+        catch(IOException e)
+        {
+            failure = e;
+        }
+    }
+
+    /**
+     * @brief - Writes a non-negative number as a varint.
+     */
+    private void writeVarint(long value) throws IOException
+    {
+        while((value & ~0x7FL) != 0)
+        {
+            out.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    /**
+     * @brief - Flushes and closes the trace.
+     * @throws IOException if any record, or the close, could not be written
+     */
+    synchronized void close() throws IOException
+    {
+        try
+        {
+            out.close();
+        }
+
+        catch(IOException e)
+        {
+            if(failure == null)
+                failure = e;
+        }
+        if(failure != null)
+            throw failure;
+    }
+
+} // class TraceRecorder
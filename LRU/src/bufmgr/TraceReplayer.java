@@ -0,0 +1,413 @@
+package bufmgr;
+import diskmgr.DiskMgr;
+import global.GlobalConst;
+import global.Minibase;
+import global.Page;
+import global.PageId;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/*
+ * @brief Runs a trace recorded with BufMgr.startTrace against a buffer
+ * manager of any policy and pool size, and reports how it did: hits, misses,
+ * BHR, evictions, dirty writes, refused pins and the time per call. Pages
+ * are neither read nor written; while a replay runs, Minibase.DiskManager is
+ * a disk manager that does nothing, so replay is not meant to run alongside
+ * a database in use.
+ *
+ * Pins are replayed with their AccessHint, and scans with a ring of the size
+ * they had. Pages read ahead are not in the trace, so read-ahead is off
+ * unless the bufmgr.readahead property turns it on for the replay; even then
+ * it races calls replayed far faster than they were made, and pages a
+ * caller prefetched are missing. A trace from a pool that read ahead shows
+ * fewer hits in replay than it had live.
+ *
+ * Usage: java bufmgr.TraceReplayer trace numbufs[,numbufs...] [policy...]
+ * replays the trace for every pool size and policy (all of them by default).
+ */
+public class TraceReplayer implements GlobalConst
+{
+    /** @brief - policies replayed when none are named */
+    public static final String[] POLICIES = { "Lru", "Mru", "LruK", "2Q", "ARC", "FIFO" };
+
+    /** @brief - the calls of a trace, read into memory so replay times the buffer manager alone */
+    private int[] ops;
+    private int[] pids;
+
+    /** @brief - ring of each call, as an index into ringSizes plus 1; 0 if none */
+    private int[] rings;
+
+    /** @brief - size of each ring the trace used */
+    private int[] ringSizes = new int[0];
+
+    /** @brief - number of calls in the trace */
+    private int size;
+
+    /** @brief - time from the first call to the last, in ns */
+    private long span;
+
+    /**
+     * @brief A disk manager that holds no pages: reads leave the frame as
+     * it is, and writes and frees do nothing.
+     */
+    private static class NullDiskMgr extends DiskMgr
+    {
+        public void read_page(PageId pageno, Page page)
+        {
+        }
+
+        public void write_page(PageId pageno, Page page)
+        {
+        }
+
+        public void deallocate_page(PageId pageno)
+        {
+        }
+
+        public void deallocate_page(PageId firstid, int run_size)
+        {
+        }
+
+        public PageId allocate_page(int run_size)
+        {
+            throw new UnsupportedOperationException("Replay does not allocate pages");
+        }
+    }
+
+    /**
+     * @brief The outcome of one replay.
+     */
+    public static class Result
+    {
+        private String policy;
+        private int numbufs;
+        private long calls;
+        private long hits;
+        private long misses;
+        private long evictions;
+        private long writeBacks;
+        private long pinFailures;
+        private long skipped;
+        private long elapsed;
+
+        /** Gets the policy replayed. */
+        public String getPolicy()
+        {
+            return policy;
+        }
+
+        /** Gets the pool size replayed. */
+        public int getNumBuffers()
+        {
+            return numbufs;
+        }
+
+        /** Gets the number of calls replayed. */
+        public long getCalls()
+        {
+            return calls;
+        }
+
+        /** Gets the number of pins that found their page in the pool. */
+        public long getHits()
+        {
+            return hits;
+        }
+
+        /** Gets the number of pins that had to load their page. */
+        public long getMisses()
+        {
+            return misses;
+        }
+
+        /** Gets the BHR as printBhrAndRefCount gives it: hits per page load. */
+        public double getBhr()
+        {
+            return (misses == 0) ? 0 : (double) hits / misses;
+        }
+
+        /** Gets the fraction of pins that were hits. */
+        public double getHitRatio()
+        {
+            return (hits + misses == 0) ? 0 : (double) hits / (hits + misses);
+        }
+
+        /** Gets the number of pages evicted. */
+        public long getEvictions()
+        {
+            return evictions;
+        }
+
+        /** Gets the number of dirty pages that would have been written. */
+        public long getWriteBacks()
+        {
+            return writeBacks;
+        }
+
+        /** Gets the number of pins refused because every frame was pinned. */
+        public long getPinFailures()
+        {
+            return pinFailures;
+        }
+
+        /**
+         * Gets the number of calls the buffer manager rejected, e.g. unpins
+         * of pages whose pin was refused in this smaller pool.
+         */
+        public long getSkipped()
+        {
+            return skipped;
+        }
+
+        /** Gets the mean time per call, in ns. */
+        public double getNanosPerCall()
+        {
+            return (calls == 0) ? 0 : (double) elapsed / calls;
+        }
+
+        public String toString()
+        {
+            return String.format("%-5s %8d %10d %10d %10d %8.4f %9.5f %10d %10d %8d %8d %9.1f",
+                policy, numbufs, calls, hits, misses, getHitRatio(), getBhr(),
+                evictions, writeBacks, pinFailures, skipped, getNanosPerCall());
+        }
+
+        /** Gets the column names of toString. */
+        public static String header()
+        {
+            return String.format("%-5s %8s %10s %10s %10s %8s %9s %10s %10s %8s %8s %9s",
+                "Policy", "Buffers", "Calls", "Hits", "Misses", "HitRatio", "BHR",
+                "Evictions", "Writes", "Failed", "Skipped", "ns/call");
+        }
+    }
+
+    /**
+     * Reads a whole trace into memory.
+     * @param in the trace, as written by BufMgr.startTrace
+     * @throws IOException if the trace can not be read
+     * @throws IllegalArgumentException if it is not a trace, or is cut short
+     */
+    public TraceReplayer(InputStream in) throws IOException
+    {
+        DataInputStream data = new DataInputStream(new BufferedInputStream(in, 1 << 16));
+        if(data.readInt() != TraceRecorder.MAGIC || data.readByte() != TraceRecorder.VERSION)
+            throw new IllegalArgumentException("Not a buffer manager trace");
+
+        ops = new int[1024];
+        pids = new int[1024];
+        rings = new int[1024];
+        HashMap<Long, Integer> ringIndex = new HashMap<Long, Integer>();
+        int pid = 0;
+        while(true)
+        {
+            int op = data.read();
+            if(op < 0)
+                break;
+            try
+            {
+                int zigzag = (int) readVarint(data);
+                pid += (zigzag >>> 1) ^ -(zigzag & 1);
+                span += readVarint(data);
+                if((op & TraceRecorder.OP_MASK) == TraceRecorder.NEW)
+                    readVarint(data);
+                int ring = 0;
+                if((op & TraceRecorder.RING) != 0)
+                {
+                    long id = readVarint(data);
+                    int ringSize = (int) readVarint(data);
+                    Integer index = ringIndex.get(id);
+                    if(index == null)
+                    {
+                        index = ringSizes.length;
+                        ringIndex.put(id, index);
+                        ringSizes = Arrays.copyOf(ringSizes, index + 1);
+                        ringSizes[index] = ringSize;
+                    }
+                    ring = index + 1;
+                }
+
+                if(size == ops.length)
+                {
+                    ops = Arrays.copyOf(ops, 2 * size);
+                    pids = Arrays.copyOf(pids, 2 * size);
+                    rings = Arrays.copyOf(rings, 2 * size);
+                }
+                ops[size] = op;
+                pids[size] = pid;
+                rings[size] = ring;
+                size++;
+            }
+
+            catch(EOFException e)
+            {
+                throw new IllegalArgumentException("Trace cut short after call " + size);
+            }
+        }
+    }
+
+    /**
+     * @brief - Reads an unsigned varint.
+     */
+    private static long readVarint(DataInputStream data) throws IOException
+    {
+        long value = 0;
+        for(int shift = 0; ; shift += 7)
+        {
+            int b = data.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if((b & 0x80) == 0)
+                return value;
+        }
+    }
+
+    /**
+     * Gets the number of calls in the trace.
+     */
+    public int getNumCalls()
+    {
+        return size;
+    }
+
+    /**
+     * Gets the time the recorded calls took, from the first to the last, in ns.
+     */
+    public long getSpan()
+    {
+        return span;
+    }
+
+    /**
+     * Gets the number of scan rings the trace used.
+     */
+    public int getNumRings()
+    {
+        return ringSizes.length;
+    }
+
+    /**
+     * Runs the trace against a new buffer manager, one call after another.
+     * Read-ahead is on only if the bufmgr.readahead property says so.
+     * @param policy name of the replacement policy (Lru, Mru, LruK, 2Q, ARC or FIFO)
+     * @param numbufs number of buffers in the pool
+     * @throws IllegalArgumentException if the policy is unknown
+     */
+    public Result replay(String policy, int numbufs)
+    {
+        DiskMgr disk = Minibase.DiskManager;
+        Minibase.DiskManager = new NullDiskMgr();
+        try
+        {
+            BufMgr bm = new BufMgr(numbufs, numbufs, policy);
+            bm.stopBackgroundWriter();
+            bm.unregisterMBean();
+
+            BufferRing[] live = new BufferRing[ringSizes.length];
+            for(int r = 0; r < live.length; r++)
+                live[r] = new BufferRing(ringSizes[r]);
+            AccessHint[] hints = AccessHint.values();
+
+            Result result = new Result();
+            PageId pageno = new PageId();
+            Page page = new Page();
+            Page contents = new Page();
+            long start = System.nanoTime();
+            for(int i = 0; i < size; i++)
+            {
+                pageno.pid = pids[i];
+                boolean flag = (ops[i] & TraceRecorder.FLAG) != 0;
+                try
+                {
+                    switch(ops[i] & TraceRecorder.OP_MASK)
+                    {
+                        case TraceRecorder.PIN:
+                            if(rings[i] != 0)
+                                bm.pinPage(pageno, flag ? contents : page, flag, live[rings[i] - 1]);
+                            else
+                                bm.pinPage(pageno, flag ? contents : page, flag,
+                                    hints[(ops[i] & TraceRecorder.HINT_MASK) >> TraceRecorder.HINT_SHIFT]);
+                            break;
+                        case TraceRecorder.UNPIN:
+                            bm.unpinPage(pageno, flag);
+                            break;
+                        case TraceRecorder.FREE:
+                            bm.freePage(pageno);
+                            break;
+                        default:
+                            // a new run only allocates; its first page's pin follows
+                            break;
+                    }
+                }
+
+                catch(IllegalArgumentException e)
+                {
+                    result.skipped++;
+                }
+
+                catch(IllegalStateException e)
+                {
+                    // counted by the buffer manager as a pin failure
+                }
+            }
+            result.elapsed = System.nanoTime() - start;
+            bm.stopReadAhead();
+
+            BufMgrMXBean metrics = bm.getMetrics();
+            result.policy = bm.replacerName;
+            result.numbufs = numbufs;
+            result.calls = size;
+            result.hits = metrics.getHits();
+            result.misses = metrics.getMisses();
+            result.evictions = metrics.getEvictions();
+            result.writeBacks = metrics.getWriteBacks();
+            result.pinFailures = metrics.getPinFailures();
+            return result;
+        }
+
+        finally
+        {
+            Minibase.DiskManager = disk;
+        }
+    }
+
+    /**
+     * Replays a trace file for every pool size and policy given, and prints
+     * a line for each. The first replay is run twice and the first run is
+     * not shown, so the times are not those of cold code.
+     */
+    public static void main(String[] argv) throws IOException
+    {
+        if(argv.length < 2)
+        {
+            System.err.println("Usage: java bufmgr.TraceReplayer trace numbufs[,numbufs...] [policy...]");
+            System.exit(1);
+        }
+
+        TraceReplayer replayer;
+        try(FileInputStream in = new FileInputStream(argv[0]))
+        {
+            replayer = new TraceReplayer(in);
+        }
+        String[] sizes = argv[1].split(",");
+        String[] policies = (argv.length > 2) ? Arrays.copyOfRange(argv, 2, argv.length) : POLICIES;
+
+        System.out.println(replayer.getNumCalls() + " calls over " + (replayer.getSpan() / 1000000) + " ms, "
+            + replayer.getNumRings() + " scan rings");
+        int window = Integer.getInteger(BufMgr.READAHEAD_PROPERTY, 0);
+        System.out.println((window > 0) ? "Read-ahead on, window " + window + "; prefetched pages are not in the trace"
+            : "Read-ahead off; hits from read-ahead and prefetch are not replayed (set " + BufMgr.READAHEAD_PROPERTY + ")");
+        System.out.println(Result.header());
+        replayer.replay(policies[0], Integer.parseInt(sizes[0]));
+        for(String numbufs : sizes)
+        {
+            for(String policy : policies)
+                System.out.println(replayer.replay(policy, Integer.parseInt(numbufs)));
+        }
+    }
+
+} // public class TraceReplayer implements GlobalConst
@@ -0,0 +1,386 @@
+package bufmgr;
+import global.*;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+
+/**
+ * @brief Implements the 2Q Algorithm for page replacement (Johnson and Shasha).
+ * A page read for the first time goes into A1in, a FIFO probation queue. When
+ * it falls out of A1in only its page id is remembered in the A1out ghost queue.
+ * If it is read again while still in A1out it has proven itself and is placed
+ * in Am, the main LRU queue. A one-shot sequential scan therefore only cycles
+ * through A1in and leaves the hot pages in Am alone.
+ */
+class TwoQ extends Replacer
+{
+	// Constants that describe status of page, the same values BufMgr uses
+	protected static final int AVAILABLE = 10;
+	protected static final int REFERENCED = 11;
+	protected static final int PINNED = 12;
+
+	/** @desc - the queue a frame's page belongs to */
+	private static final byte NONE = 0;
+	private static final byte IN_A1IN = 1;
+	private static final byte IN_AM = 2;
+
+	/** @desc - default size of A1in as a fraction of the buffer pool */
+	protected static final double DEFAULT_KIN = 0.25;
+	/** @desc - default size of A1out as a fraction of the buffer pool */
+	protected static final double DEFAULT_KOUT = 0.5;
+
+	private BufMgr mgrArg;
+
+	/** @desc - sizes of A1in and A1out as fractions of the buffer pool */
+	private double kinFraction;
+	private double koutFraction;
+
+	/** @desc - target number of frames in A1in */
+	private int kin;
+	/** @desc - maximum number of page ids in A1out */
+	private int kout;
+
+	/** @desc - frames holding no page, used before anything is evicted */
+	private FrameList free;
+	/**
+	 * @desc - probation queue, FIFO order from oldest (head) to newest. A page
+	 * joins it when its first pin is released; a later pin leaves it in place
+	 * until it reaches the head, where it is parked until its last unpin
+	 */
+	private FrameList a1in;
+	/** @desc - main queue of unpinned frames, LRU order from least (head) to most recently used */
+	private FrameList am;
+	/** @desc - ghost queue of page ids recently evicted from A1in, oldest first */
+	private LinkedHashSet<Integer> a1out;
+
+	/** @desc - the page each frame holds as far as the replacer knows */
+	private int residentPid[];
+	/** @desc - the queue each frame's page belongs to, whether or not the frame is on it */
+	private byte queueOf[];
+	/** @desc - frames parked off the head of A1in while pinned */
+	private boolean parked[];
+	/** @desc - frames holding a page read ahead and not referenced since */
+	private boolean cold[];
+	/** @desc - number of pages belonging to A1in and to Am, pinned ones included */
+	private int a1inPages, amPages;
+
+	public TwoQ(BufMgr mgrArg)
+	{
+		this(mgrArg, DEFAULT_KIN, DEFAULT_KOUT);
+	}
+
+	/**
+	 * Constructs a 2Q replacer.
+	 * @param mgrArg - the buffer manager
+	 * @param kinFraction - size of A1in as a fraction of BufMgr.getNumBuffers()
+	 * @param koutFraction - size of A1out as a fraction of BufMgr.getNumBuffers()
+	 */
+	public TwoQ(BufMgr mgrArg, double kinFraction, double koutFraction)
+	{
+		super(mgrArg);
+		this.mgrArg = mgrArg;
+
+		if (kinFraction <= 0 || kinFraction >= 1 || koutFraction < 0)
+			throw new IllegalArgumentException("Invalid 2Q queue fractions");
+
+		this.kinFraction = kinFraction;
+		this.koutFraction = koutFraction;
+		setQueueSizes();
+
+		int numFrames = frametab.length;
+		free = new FrameList(numFrames);
+		a1in = new FrameList(numFrames);
+		am = new FrameList(numFrames);
+		a1out = new LinkedHashSet<Integer>(kout + 1);
+		residentPid = new int[numFrames];
+		queueOf = new byte[numFrames];
+		parked = new boolean[numFrames];
+		cold = new boolean[numFrames];
+		for (int i = 0; i < numFrames; i++)
+		{
+			frametab[i].state = AVAILABLE;
+			residentPid[i] = INVALID_PAGEID;
+			free.addLast(i);
+		}
+	}
+
+	/**
+	 * Notifies the replacer of a pined page.
+	 * A newly loaded page belongs to Am if A1out remembers it, otherwise to
+	 * A1in; it joins the queue when it is unpinned. A hit in Am takes the
+	 * frame off the queue, to come back as most recently used; a hit in A1in
+	 * does not move it, so correlated references during probation are not
+	 * promoted. The first pin of a page read ahead counts as loading it.
+	 * @param fdesc - frame descriptor object that contains details about a frame
+	 */
+	public void pinPage(FrameDesc fdesc)
+	{
+		int frameNo = fdesc.index;
+		int pid = fdesc.pageno.pid;
+		fdesc.state = PINNED;
+
+		if (residentPid[frameNo] != pid || cold[frameNo])
+		{
+			forget(frameNo);
+			residentPid[frameNo] = pid;
+			free.remove(frameNo);
+			if (a1out.remove(Integer.valueOf(pid)))
+			{
+				queueOf[frameNo] = IN_AM;
+				amPages++;
+			}
+			else
+			{
+				queueOf[frameNo] = IN_A1IN;
+				a1inPages++;
+			}
+		}
+		else if (queueOf[frameNo] == IN_AM)
+			am.remove(frameNo);
+	}
+
+	/**
+	 * Notifies the replacer of a page read ahead. It belongs to A1in whether
+	 * or not A1out remembers it; A1out is only looked at on its first pin,
+	 * and the page is not remembered there if it is evicted before that.
+	 * @param fdesc - frame descriptor object that contains details about a frame
+	 */
+	public void prefetchPage(FrameDesc fdesc)
+	{
+		int frameNo = fdesc.index;
+		fdesc.state = PINNED;
+		forget(frameNo);
+		residentPid[frameNo] = fdesc.pageno.pid;
+		free.remove(frameNo);
+		queueOf[frameNo] = IN_A1IN;
+		a1inPages++;
+		cold[frameNo] = true;
+	}
+
+	/**
+	 * Notifies the replacer of an unpinned page. The frame goes back on its
+	 * queue: at the tail of Am, at the head of A1in if it was parked there,
+	 * and at the tail of A1in if it was just loaded.
+	 */
+	public void unpinPage(FrameDesc fdesc)
+	{
+		int frameNo = fdesc.index;
+		if (fdesc.getPinCount() != 0)
+			return;
+
+		fdesc.state = REFERENCED;
+		if (queueOf[frameNo] == IN_AM)
+			am.addLast(frameNo);
+		else if (queueOf[frameNo] == IN_A1IN && parked[frameNo])
+		{
+			parked[frameNo] = false;
+			a1in.addFirst(frameNo);
+		}
+		else if (queueOf[frameNo] == IN_A1IN && !a1in.contains(frameNo))
+			a1in.addLast(frameNo);
+	}
+
+	/**
+	 * Takes the frame off its queue and forgets which queue its page
+	 * belonged to.
+	 * @param frameNo - the frame number
+	 */
+	private void forget(int frameNo)
+	{
+		if (queueOf[frameNo] == IN_A1IN)
+		{
+			a1in.remove(frameNo);
+			a1inPages--;
+		}
+		else if (queueOf[frameNo] == IN_AM)
+		{
+			am.remove(frameNo);
+			amPages--;
+		}
+		queueOf[frameNo] = NONE;
+		parked[frameNo] = false;
+		cold[frameNo] = false;
+	}
+
+	/**
+	 * Notifies the replacer of a free page.
+	 */
+	public void freePage(FrameDesc fdesc)
+	{
+		int frameNo = fdesc.index;
+		fdesc.state = AVAILABLE;
+		forget(frameNo);
+		a1out.remove(Integer.valueOf(residentPid[frameNo]));
+		residentPid[frameNo] = INVALID_PAGEID;
+		free.addFirst(frameNo);
+	}
+
+	/**
+	 * Notifies the replacer of a frame that joined the pool; it is empty.
+	 * The queues grow with the pool.
+	 */
+	public void addFrame(FrameDesc fdesc)
+	{
+		freePage(fdesc);
+		setQueueSizes();
+	}
+
+	/**
+	 * Notifies the replacer of a frame that left the pool. Its page is
+	 * forgotten as if evicted from Am, and the queues shrink with the pool.
+	 */
+	public void removeFrame(FrameDesc fdesc)
+	{
+		int frameNo = fdesc.index;
+		fdesc.state = PINNED;
+		free.remove(frameNo);
+		forget(frameNo);
+		residentPid[frameNo] = INVALID_PAGEID;
+		setQueueSizes();
+		while (a1out.size() > kout)
+		{
+			Iterator<Integer> oldest = a1out.iterator();
+			oldest.next();
+			oldest.remove();
+		}
+	}
+
+	/**
+	 * Sizes A1in and A1out for the number of frames in the pool.
+	 */
+	private void setQueueSizes()
+	{
+		int numFrames = mgrArg.getNumBuffers();
+		kin = Math.max(1, (int) (numFrames * kinFraction));
+		kout = (int) (numFrames * koutFraction);
+	}
+
+	/**
+	 * Notifies the replacer of a new page.
+	 */
+	public void newPage(FrameDesc fdesc) { }
+
+	/**
+	 * Selects a free frame if there is one. Otherwise, while A1in is over its
+	 * target size its oldest page is evicted and remembered in A1out; else the
+	 * least recently used page of Am is evicted. Pinned frames are not on Am,
+	 * and are parked when they reach the head of A1in, so nothing is walked.
+	 * @return the frame number return -1 if failed
+	 */
+	public int pickVictim()
+	{
+		int victim = free.removeFirst();
+
+		if (victim == FrameList.NIL)
+		{
+			if (a1inPages > kin || amPages == 0)
+			{
+				victim = oldestInA1in();
+				if (victim == FrameList.NIL)
+					victim = am.first();
+			}
+			else
+			{
+				victim = am.first();
+				if (victim == FrameList.NIL)
+					victim = oldestInA1in();
+			}
+			if (victim == FrameList.NIL)
+				return -1;
+
+			// Only pages evicted from probation are remembered, once used
+			if (queueOf[victim] == IN_A1IN && !cold[victim])
+				remember(residentPid[victim]);
+			forget(victim);
+			residentPid[victim] = INVALID_PAGEID;
+		}
+
+		frametab[victim].state = PINNED;
+		return victim;
+	}
+
+	/**
+	 * Parks the pinned frames at the head of A1in until their last unpin.
+	 * @return the unpinned frame then at the head of A1in, or NIL
+	 */
+	private int oldestInA1in()
+	{
+		int frameNo = a1in.first();
+		while (frameNo != FrameList.NIL && frametab[frameNo].state == PINNED)
+		{
+			a1in.removeFirst();
+			parked[frameNo] = true;
+			frameNo = a1in.first();
+		}
+		return frameNo;
+	}
+
+	/**
+	 * Adds a page id to A1out, dropping the oldest one when it is full.
+	 * @param pid - the evicted page
+	 */
+	private void remember(int pid)
+	{
+		if (kout == 0)
+			return;
+		if (a1out.size() >= kout)
+		{
+			Iterator<Integer> oldest = a1out.iterator();
+			oldest.next();
+			oldest.remove();
+		}
+		a1out.add(Integer.valueOf(pid));
+	}
+
+	/**
+	 * Lists the frames of the queue pickVictim would take from next, then
+	 * those of the other queue, oldest first. Pinned frames are left out.
+	 */
+	public int upcomingVictims(int out[], int n)
+	{
+		if (a1inPages > kin || amPages == 0)
+			return am.copyTo(out, unpinnedOfA1in(out, n), true);
+		return unpinnedOfA1in(out, am.copyTo(out, n, true));
+	}
+
+	/**
+	 * Appends the unpinned frames of A1in, oldest first.
+	 */
+	private int unpinnedOfA1in(int out[], int n)
+	{
+		for (int i = a1in.first(); i != FrameList.NIL && n < out.length; i = a1in.next(i))
+		{
+			if (frametab[i].state != PINNED)
+				out[n++] = i;
+		}
+		return n;
+	}
+
+	/**
+	 * Adds the target sizes and the current sizes of the queues.
+	 * @param out - receives one entry per figure
+	 */
+	public void getDetails(Map<String, Long> out)
+	{
+		out.put("kin", (long) kin);
+		out.put("kout", (long) kout);
+		out.put("a1in", (long) a1inPages);
+		out.put("am", (long) amPages);
+		out.put("a1out", (long) a1out.size());
+	}
+
+	/**
+	 * @desc - Prints out the name of the policy and the number of buffers being used
+	 * @param None
+	*/
+	public void printReplacerInfo()
+	{
+		System.out.println("+----------------------------------------+");
+		System.out.println("	The policy Being used is 2Q ");
+		System.out.println("	A1in size: " + kin + "  A1out size: " + kout);
+		System.out.println("+----------------------------------------+");
+		System.out.println("	The number of buffers is: " + mgrArg.getNumBuffers());
+		System.out.println("+----------------------------------------+");
+	}
+
+}
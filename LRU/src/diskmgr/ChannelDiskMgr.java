@@ -0,0 +1,210 @@
+package diskmgr;
+
+import global.Minibase;
+import global.Page;
+import global.PageId;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Disk manager whose page I/O uses positional FileChannel reads and writes
+ * instead of a seek on the shared RandomAccessFile followed by a read or
+ * write. There is no shared file position, so concurrent misses on different
+ * pages can do their I/O in parallel, and the buffer manager does not need to
+ * serialize it.
+ */
+public class ChannelDiskMgr extends DiskMgr {
+
+  /** Serializes run reads and writes, which use the channel's position. */
+  private final Object runLock = new Object();
+
+  /**
+   * Constructs a disk manager with no database open; call createDB or openDB.
+   */
+  public ChannelDiskMgr() {
+    super();
+  }
+
+  /**
+   * Takes over the database another disk manager has open, e.g.
+   * Minibase.DiskManager = new ChannelDiskMgr(Minibase.DiskManager);
+   * The other disk manager must not be used afterwards.
+   */
+  public ChannelDiskMgr(DiskMgr open) {
+    super();
+    name = open.name;
+    fp = open.fp;
+    num_pages = open.num_pages;
+    read_cnt = open.read_cnt;
+    write_cnt = open.write_cnt;
+  }
+
+  /**
+   * Reads the contents of the specified page from disk.
+   * 
+   * @param pageno identifies the page to read
+   * @param page output param to hold the contents of the page
+   * @throws IllegalArgumentException if pageno is invalid
+   */
+  public void read_page(PageId pageno, Page page) {
+
+    // validate the page id
+    if ((pageno.pid < 0) || (pageno.pid >= num_pages)) {
+      throw new IllegalArgumentException("Invalid page number; read aborted");
+    }
+
+    // read from the page's offset until the frame is full or the file ends
+    try {
+      FileChannel channel = fp.getChannel();
+      ByteBuffer buf = ByteBuffer.wrap(page.getData());
+      long pos = (long) pageno.pid * MINIBASE_PAGESIZE;
+      while (buf.hasRemaining()) {
+        int n = channel.read(buf, pos + buf.position());
+        if (n < 0) {
+          break;
+        }
+      }
+      countRead();
+    } catch (IOException exc) {
+      Minibase.haltSystem(exc);
+    }
+
+  } // public void read_page(PageId pageno, Page page)
+
+  /**
+   * Reads a run of pages with consecutive page numbers in one scattering
+   * read.
+   * 
+   * @param firstid identifies the first page of the run
+   * @param pages output params to hold the contents of the pages, in page
+   * number order
+   * @throws IllegalArgumentException if the run is not inside the database
+   */
+  public void read_pages(PageId firstid, Page[] pages) {
+
+    // validate the run
+    if ((firstid.pid < 0) || (firstid.pid + pages.length > num_pages)) {
+      throw new IllegalArgumentException("Invalid page number; read aborted");
+    }
+
+    // read until the frames are full or the file ends, through the
+    // channel's position like write_pages
+    try {
+      ByteBuffer[] bufs = new ByteBuffer[pages.length];
+      for (int i = 0; i < pages.length; i++) {
+        bufs[i] = ByteBuffer.wrap(pages[i].getData());
+      }
+      FileChannel channel = fp.getChannel();
+      synchronized (runLock) {
+        channel.position((long) firstid.pid * MINIBASE_PAGESIZE);
+        while (bufs[bufs.length - 1].hasRemaining()) {
+          if (channel.read(bufs) < 0) {
+            break;
+          }
+        }
+      }
+      countReads(pages.length);
+    } catch (IOException exc) {
+      Minibase.haltSystem(exc);
+    }
+
+  } // public void read_pages(PageId firstid, Page[] pages)
+
+  /**
+   * Writes the contents of the given page to disk.
+   * 
+   * @param pageno identifies the page to write
+   * @param page holds the contents of the page
+   * @throws IllegalArgumentException if pageno is invalid
+   */
+  public void write_page(PageId pageno, Page page) {
+
+    // validate the page id
+    if ((pageno.pid < 0) || (pageno.pid >= num_pages)) {
+      throw new IllegalArgumentException("Invalid page number; write aborted");
+    }
+
+    // write the whole frame at the page's offset
+    try {
+      FileChannel channel = fp.getChannel();
+      ByteBuffer buf = ByteBuffer.wrap(page.getData());
+      long pos = (long) pageno.pid * MINIBASE_PAGESIZE;
+      while (buf.hasRemaining()) {
+        channel.write(buf, pos + buf.position());
+      }
+      countWrite();
+    } catch (IOException exc) {
+      Minibase.haltSystem(exc);
+    }
+
+  } // public void write_page(PageId pageno, Page page)
+
+  /**
+   * Writes a run of pages with consecutive page numbers in one gathering
+   * write.
+   * 
+   * @param firstid identifies the first page of the run
+   * @param pages holds the contents of the pages, in page number order
+   * @throws IllegalArgumentException if the run is not inside the database
+   */
+  public void write_pages(PageId firstid, Page[] pages) {
+
+    // validate the run
+    if ((firstid.pid < 0) || (firstid.pid + pages.length > num_pages)) {
+      throw new IllegalArgumentException("Invalid page number; write aborted");
+    }
+
+    // gathering writes go through the channel's position, which nothing
+    // else here uses, so only runs need to take turns
+    try {
+      ByteBuffer[] bufs = new ByteBuffer[pages.length];
+      long remaining = 0;
+      for (int i = 0; i < pages.length; i++) {
+        bufs[i] = ByteBuffer.wrap(pages[i].getData());
+        remaining += bufs[i].remaining();
+      }
+      FileChannel channel = fp.getChannel();
+      synchronized (runLock) {
+        channel.position((long) firstid.pid * MINIBASE_PAGESIZE);
+        while (remaining > 0) {
+          remaining -= channel.write(bufs);
+        }
+      }
+      countWrites(pages.length);
+    } catch (IOException exc) {
+      Minibase.haltSystem(exc);
+    }
+
+  } // public void write_pages(PageId firstid, Page[] pages)
+
+  /**
+   * Counts a page read; reads may come from several threads at once.
+   */
+  protected synchronized void countRead() {
+    read_cnt++;
+  }
+
+  /**
+   * Counts the pages of a run read.
+   */
+  protected synchronized void countReads(int count) {
+    read_cnt += count;
+  }
+
+  /**
+   * Counts a page write; writes may come from several threads at once.
+   */
+  protected synchronized void countWrite() {
+    write_cnt++;
+  }
+
+  /**
+   * Counts the pages of a run write.
+   */
+  protected synchronized void countWrites(int count) {
+    write_cnt += count;
+  }
+
+} // public class ChannelDiskMgr extends DiskMgr
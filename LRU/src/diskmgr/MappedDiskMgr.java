@@ -0,0 +1,232 @@
+package diskmgr;
+
+import global.Minibase;
+import global.Page;
+import global.PageId;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Disk manager that maps the database file into memory in fixed size
+ * segments, so reading or writing a page is a memory copy to or from the OS
+ * page cache rather than a system call. Segments are mapped the first time
+ * one of their pages is used. Changes reach the disk when the OS writes them
+ * back, or when sync is called; BufMgr.flushAllPages calls it, and closeDB
+ * flushes.
+ */
+public class MappedDiskMgr extends ChannelDiskMgr {
+
+  /** Number of pages mapped together in one segment. */
+  public static final int SEGMENT_PAGES = 1024;
+
+  /**
+   * The mapped segments, null until first used. Lookups read it without the
+   * lock, so the array is replaced rather than cleared, and each slot is set
+   * once, with a write other threads see only after the mapping is complete.
+   */
+  protected volatile AtomicReferenceArray<MappedByteBuffer> segments;
+
+  /**
+   * Constructs a disk manager with no database open; call createDB or openDB.
+   */
+  public MappedDiskMgr() {
+    super();
+  }
+
+  /**
+   * Takes over the database another disk manager has open, e.g.
+   * Minibase.DiskManager = new MappedDiskMgr(Minibase.DiskManager);
+   * The other disk manager must not be used afterwards.
+   */
+  public MappedDiskMgr(DiskMgr open) {
+    super(open);
+  }
+
+  /**
+   * Creates the database with the specified number of pages. Nothing is
+   * mapped yet.
+   */
+  public void createDB(String fname, int num_pgs) {
+    super.createDB(fname, num_pgs);
+    synchronized (this) {
+      segments = null;
+    }
+  }
+
+  /**
+   * Opens the database with the given filename. Nothing is mapped yet.
+   */
+  public void openDB(String fname) {
+    super.openDB(fname);
+    synchronized (this) {
+      segments = null;
+    }
+  }
+
+  /**
+   * Closes the database; the base closeDB flushes the buffer pool, and the
+   * flush forces the mapped segments to disk.
+   */
+  public void closeDB() {
+    super.closeDB();
+    synchronized (this) {
+      segments = null;
+    }
+  }
+
+  /**
+   * Gets the mapped segment holding the given page, mapping it if needed.
+   */
+  protected MappedByteBuffer segment(int pid) throws IOException {
+    int seg = pid / SEGMENT_PAGES;
+    AtomicReferenceArray<MappedByteBuffer> segs = segments;
+    if (segs != null) {
+      MappedByteBuffer mapped = segs.get(seg);
+      if (mapped != null) {
+        return mapped;
+      }
+    }
+    synchronized (this) {
+      segs = segments;
+      if (segs == null) {
+        segs = new AtomicReferenceArray<MappedByteBuffer>((num_pages + SEGMENT_PAGES - 1) / SEGMENT_PAGES);
+        segments = segs;
+      }
+      MappedByteBuffer mapped = segs.get(seg);
+      if (mapped == null) {
+        long start = (long) seg * SEGMENT_PAGES * MINIBASE_PAGESIZE;
+        long length = Math.min((long) SEGMENT_PAGES * MINIBASE_PAGESIZE,
+            (long) num_pages * MINIBASE_PAGESIZE - start);
+        mapped = fp.getChannel().map(FileChannel.MapMode.READ_WRITE, start, length);
+        segs.set(seg, mapped);
+      }
+      return mapped;
+    }
+  }
+
+  /**
+   * Reads the contents of the specified page from disk.
+   * 
+   * @param pageno identifies the page to read
+   * @param page output param to hold the contents of the page
+   * @throws IllegalArgumentException if pageno is invalid
+   */
+  public void read_page(PageId pageno, Page page) {
+
+    // validate the page id
+    if ((pageno.pid < 0) || (pageno.pid >= num_pages)) {
+      throw new IllegalArgumentException("Invalid page number; read aborted");
+    }
+
+    // copy the page out of its segment; absolute gets leave the shared
+    // buffer position alone, so concurrent reads do not disturb each other
+    try {
+      int offset = (pageno.pid % SEGMENT_PAGES) * MINIBASE_PAGESIZE;
+      segment(pageno.pid).get(offset, page.getData());
+      countRead();
+    } catch (IOException exc) {
+      Minibase.haltSystem(exc);
+    }
+
+  } // public void read_page(PageId pageno, Page page)
+
+  /**
+   * Reads a run of pages with consecutive page numbers; a memory copy per
+   * page, as in read_page.
+   * 
+   * @param firstid identifies the first page of the run
+   * @param pages output params to hold the contents of the pages, in page
+   * number order
+   * @throws IllegalArgumentException if the run is not inside the database
+   */
+  public void read_pages(PageId firstid, Page[] pages) {
+
+    // validate the run
+    if ((firstid.pid < 0) || (firstid.pid + pages.length > num_pages)) {
+      throw new IllegalArgumentException("Invalid page number; read aborted");
+    }
+
+    try {
+      for (int i = 0; i < pages.length; i++) {
+        int pid = firstid.pid + i;
+        segment(pid).get((pid % SEGMENT_PAGES) * MINIBASE_PAGESIZE, pages[i].getData());
+      }
+      countReads(pages.length);
+    } catch (IOException exc) {
+      Minibase.haltSystem(exc);
+    }
+
+  } // public void read_pages(PageId firstid, Page[] pages)
+
+  /**
+   * Writes the contents of the given page to disk.
+   * 
+   * @param pageno identifies the page to write
+   * @param page holds the contents of the page
+   * @throws IllegalArgumentException if pageno is invalid
+   */
+  public void write_page(PageId pageno, Page page) {
+
+    // validate the page id
+    if ((pageno.pid < 0) || (pageno.pid >= num_pages)) {
+      throw new IllegalArgumentException("Invalid page number; write aborted");
+    }
+
+    // copy the page into its segment
+    try {
+      int offset = (pageno.pid % SEGMENT_PAGES) * MINIBASE_PAGESIZE;
+      segment(pageno.pid).put(offset, page.getData());
+      countWrite();
+    } catch (IOException exc) {
+      Minibase.haltSystem(exc);
+    }
+
+  } // public void write_page(PageId pageno, Page page)
+
+  /**
+   * Writes a run of pages with consecutive page numbers; a memory copy per
+   * page, as in write_page.
+   * 
+   * @param firstid identifies the first page of the run
+   * @param pages holds the contents of the pages, in page number order
+   * @throws IllegalArgumentException if the run is not inside the database
+   */
+  public void write_pages(PageId firstid, Page[] pages) {
+
+    // validate the run
+    if ((firstid.pid < 0) || (firstid.pid + pages.length > num_pages)) {
+      throw new IllegalArgumentException("Invalid page number; write aborted");
+    }
+
+    try {
+      for (int i = 0; i < pages.length; i++) {
+        int pid = firstid.pid + i;
+        segment(pid).put((pid % SEGMENT_PAGES) * MINIBASE_PAGESIZE, pages[i].getData());
+      }
+      countWrites(pages.length);
+    } catch (IOException exc) {
+      Minibase.haltSystem(exc);
+    }
+
+  } // public void write_pages(PageId firstid, Page[] pages)
+
+  /**
+   * Forces every mapped segment to disk.
+   */
+  public void sync() {
+    AtomicReferenceArray<MappedByteBuffer> segs = segments;
+    if (segs == null) {
+      return;
+    }
+    for (int i = 0; i < segs.length(); i++) {
+      MappedByteBuffer seg = segs.get(i);
+      if (seg != null) {
+        seg.force();
+      }
+    }
+  }
+
+} // public class MappedDiskMgr extends ChannelDiskMgr
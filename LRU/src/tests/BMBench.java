@@ -0,0 +1,262 @@
+package tests;
+
+import diskmgr.ChannelDiskMgr;
+import diskmgr.DiskMgr;
+import diskmgr.MappedDiskMgr;
+import global.Minibase;
+import global.Page;
+import global.PageId;
+
+/**
+ * Micro benchmarks for the bufmgr layer; reports nanoseconds per operation
+ * or throughput.
+ */
+class BMBench extends TestDriver {
+
+  /** The display name of the benchmark suite. */
+  private static final String TEST_NAME = "buffer manager benchmarks";
+
+  /** Untimed rounds run first so the JIT has compiled the hot path. */
+  private static final int WARMUP_ROUNDS = 5;
+
+  /** Timed rounds; the best one is reported. */
+  private static final int MEASURE_ROUNDS = 10;
+
+  /** Operations per round. */
+  private static final int OPS_PER_ROUND = 1000000;
+
+  /**
+   * Benchmark application entry point; runs all benchmarks.
+   */
+  public static void main(String argv[]) {
+
+    BMBench bench = new BMBench();
+    bench.create_minibase();
+
+    System.out.println("\n" + "Running " + TEST_NAME + "...");
+    bench.benchHitPath();
+    bench.benchConcurrentHits();
+    bench.benchDiskBackends();
+    bench.benchCheckpoint();
+
+    System.out.println("\n" + "All " + TEST_NAME + " completed.");
+
+  } // public static void main (String argv[])
+
+  /**
+   * Times pinPage/unpinPage pairs on pages that are already in the pool.
+   */
+  protected void benchHitPath() {
+
+    int numPages = Minibase.BufferManager.getNumUnpinned();
+    Page pg = new Page();
+    PageId firstPid = Minibase.BufferManager.newPage(pg, numPages);
+    Minibase.BufferManager.unpinPage(firstPid, UNPIN_CLEAN);
+
+    // one pin per page brings the whole set into the pool
+    PageId[] pids = new PageId[numPages];
+    for (int i = 0; i < numPages; i++) {
+      pids[i] = new PageId(firstPid.pid + i);
+      Minibase.BufferManager.pinPage(pids[i], pg, PIN_DISKIO);
+      Minibase.BufferManager.unpinPage(pids[i], UNPIN_CLEAN);
+    }
+
+    long best = Long.MAX_VALUE;
+    for (int round = 0; round < WARMUP_ROUNDS + MEASURE_ROUNDS; round++) {
+      long start = System.nanoTime();
+      for (int op = 0; op < OPS_PER_ROUND; op++) {
+        PageId pid = pids[op % numPages];
+        Minibase.BufferManager.pinPage(pid, pg, PIN_DISKIO);
+        Minibase.BufferManager.unpinPage(pid, UNPIN_CLEAN);
+      }
+      long elapsed = System.nanoTime() - start;
+      if (round >= WARMUP_ROUNDS) {
+        best = Math.min(best, elapsed);
+      }
+    }
+
+    System.out.printf("  hit path (pin + unpin, %d pages): %8.1f ns/op\n",
+        numPages, (double) best / OPS_PER_ROUND);
+
+  } // protected void benchHitPath ()
+
+  /**
+   * Stress test: several threads pin and unpin resident pages at once.
+   * Reports total throughput for 1, 2, 4 and 8 threads.
+   */
+  protected void benchConcurrentHits() {
+
+    final int numPages = Minibase.BufferManager.getNumUnpinned();
+    Page pg = new Page();
+    PageId firstPid = Minibase.BufferManager.newPage(pg, numPages);
+    Minibase.BufferManager.unpinPage(firstPid, UNPIN_CLEAN);
+    final PageId[] pids = new PageId[numPages];
+    for (int i = 0; i < numPages; i++) {
+      pids[i] = new PageId(firstPid.pid + i);
+      Minibase.BufferManager.pinPage(pids[i], pg, PIN_DISKIO);
+      Minibase.BufferManager.unpinPage(pids[i], UNPIN_CLEAN);
+    }
+
+    for (int numThreads = 1; numThreads <= 8; numThreads *= 2) {
+      long best = Long.MAX_VALUE;
+      for (int round = 0; round < WARMUP_ROUNDS + MEASURE_ROUNDS; round++) {
+        Thread[] threads = new Thread[numThreads];
+        for (int t = 0; t < numThreads; t++) {
+          final int offset = t;
+          threads[t] = new Thread() {
+            public void run() {
+              Page mypg = new Page();
+              for (int op = 0; op < OPS_PER_ROUND; op++) {
+                PageId pid = pids[(op + offset) % numPages];
+                Minibase.BufferManager.pinPage(pid, mypg, PIN_DISKIO);
+                Minibase.BufferManager.unpinPage(pid, UNPIN_CLEAN);
+              }
+            }
+          };
+        }
+        long start = System.nanoTime();
+        for (Thread thread : threads) {
+          thread.start();
+        }
+        for (Thread thread : threads) {
+          try {
+            thread.join();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+          }
+        }
+        long elapsed = System.nanoTime() - start;
+        if (round >= WARMUP_ROUNDS) {
+          best = Math.min(best, elapsed);
+        }
+      }
+      System.out.printf("  concurrent hits (%d threads, %d cores): %8.2f Mops/s\n",
+          numThreads, Runtime.getRuntime().availableProcessors(),
+          (double) numThreads * OPS_PER_ROUND * 1000 / best);
+    }
+
+  } // protected void benchConcurrentHits ()
+
+  /**
+   * Times read_page over every page of the database, in order and in random
+   * order, with the RandomAccessFile, FileChannel and memory mapped disk
+   * managers. The file is small enough to stay in the OS page cache.
+   */
+  protected void benchDiskBackends() {
+
+    // all backends share the one open database file
+    Minibase.BufferManager.flushAllPages();
+    DiskMgr raf = Minibase.DiskManager;
+    DiskMgr[] backends = { raf, new ChannelDiskMgr(raf), new MappedDiskMgr(raf) };
+
+    int numPages = DB_SIZE;
+    int[] inOrder = new int[numPages];
+    int[] shuffled = new int[numPages];
+    java.util.Random shuffle = new java.util.Random(42);
+    for (int i = 0; i < numPages; i++) {
+      inOrder[i] = i;
+      shuffled[i] = i;
+    }
+    for (int i = numPages - 1; i > 0; i--) {
+      int j = shuffle.nextInt(i + 1);
+      int tmp = shuffled[i];
+      shuffled[i] = shuffled[j];
+      shuffled[j] = tmp;
+    }
+
+    for (DiskMgr disk : backends) {
+      System.out.printf("  %-14s sequential read: %8.1f ns/page   random read: %8.1f ns/page\n",
+          disk.getClass().getSimpleName(), timeReads(disk, inOrder), timeReads(disk, shuffled));
+    }
+
+  } // protected void benchDiskBackends ()
+
+  /**
+   * Times a checkpoint: every frame of the pool holds a dirty page, the pages
+   * are consecutive but were read in random order, and flushAllPages writes
+   * them. Compared with flushing one page at a time in frame order, for each
+   * disk manager.
+   */
+  protected void benchCheckpoint() {
+
+    int numPages = Minibase.BufferManager.getNumBuffers();
+    Page pg = new Page();
+    PageId firstPid = Minibase.BufferManager.newPage(pg, numPages);
+    Minibase.BufferManager.unpinPage(firstPid, UNPIN_CLEAN);
+    PageId[] pids = new PageId[numPages];
+    for (int i = 0; i < numPages; i++) {
+      pids[i] = new PageId(firstPid.pid + i);
+    }
+    java.util.Random shuffle = new java.util.Random(42);
+
+    Minibase.BufferManager.flushAllPages();
+    DiskMgr raf = Minibase.DiskManager;
+    DiskMgr[] backends = { raf, new ChannelDiskMgr(raf), new MappedDiskMgr(raf) };
+    for (DiskMgr disk : backends) {
+      Minibase.DiskManager = disk;
+      long bestSorted = Long.MAX_VALUE;
+      long bestSingle = Long.MAX_VALUE;
+      for (int round = 0; round < 2 * (WARMUP_ROUNDS + MEASURE_ROUNDS) * 100; round++) {
+
+        // dirty the whole pool, pinning the pages in random order
+        for (int i = numPages - 1; i > 0; i--) {
+          int j = shuffle.nextInt(i + 1);
+          PageId tmp = pids[i];
+          pids[i] = pids[j];
+          pids[j] = tmp;
+        }
+        for (int i = 0; i < numPages; i++) {
+          Minibase.BufferManager.pinPage(pids[i], pg, PIN_DISKIO);
+          Minibase.BufferManager.unpinPage(pids[i], UNPIN_DIRTY);
+        }
+
+        // alternate between the two ways of flushing
+        long start = System.nanoTime();
+        if (round % 2 == 0) {
+          Minibase.BufferManager.flushAllPages();
+        } else {
+          for (int i = 0; i < numPages; i++) {
+            Minibase.BufferManager.flushPage(pids[i]);
+          }
+        }
+        long elapsed = System.nanoTime() - start;
+        if (round >= 2 * WARMUP_ROUNDS * 100) {
+          if (round % 2 == 0) {
+            bestSorted = Math.min(bestSorted, elapsed);
+          } else {
+            bestSingle = Math.min(bestSingle, elapsed);
+          }
+        }
+      }
+      System.out.printf("  %-14s checkpoint of %d pages: flushAllPages %8.1f us   page by page %8.1f us\n",
+          disk.getClass().getSimpleName(), numPages, bestSorted / 1000.0, bestSingle / 1000.0);
+    }
+    Minibase.DiskManager = raf;
+
+  } // protected void benchCheckpoint ()
+
+  /**
+   * Reads the given pages in the given order; returns the best time per page.
+   */
+  private double timeReads(DiskMgr disk, int[] pids) {
+
+    Page pg = new Page();
+    PageId pid = new PageId();
+    long best = Long.MAX_VALUE;
+    for (int round = 0; round < WARMUP_ROUNDS + MEASURE_ROUNDS; round++) {
+      long start = System.nanoTime();
+      for (int i = 0; i < pids.length; i++) {
+        pid.pid = pids[i];
+        disk.read_page(pid, pg);
+      }
+      long elapsed = System.nanoTime() - start;
+      if (round >= WARMUP_ROUNDS) {
+        best = Math.min(best, elapsed);
+      }
+    }
+    return (double) best / pids.length;
+
+  } // private double timeReads (DiskMgr disk, int[] pids)
+
+} // class BMBench extends TestDriver
@@ -0,0 +1,335 @@
+package tests;
+
+import diskmgr.ChannelDiskMgr;
+import diskmgr.MappedDiskMgr;
+import global.Convert;
+import global.Minibase;
+import global.Page;
+import global.PageId;
+import java.util.Random;
+
+/**
+ * Tests for writing the buffer pool back to disk: after a flush, what is on
+ * disk must be exactly what was last written in the pool.
+ */
+class BMFlushTest extends TestDriver {
+
+  /** The display name of the test suite. */
+  private static final String TEST_NAME = "buffer manager flush tests";
+
+  /** Number of pages used; they all fit in the pool. */
+  private static final int NUM_PAGES = 40;
+
+  /** Offset of the last int on a page. */
+  private static final int PAGE_END = 1020;
+
+  /** Number of times the pages are changed and flushed. */
+  private static final int NUM_ROUNDS = 20;
+
+  /** Longest wait for the background writer to clean the pool, in milliseconds. */
+  private static final long MAX_WAIT = 10000;
+
+  /** Disk managers the tests run over. */
+  private static final String[] DISKS = { "DiskMgr", "ChannelDiskMgr", "MappedDiskMgr" };
+
+  /**
+   * Test application entry point; runs all tests.
+   */
+  public static void main(String argv[]) {
+
+    System.out.println("\n" + "Running " + TEST_NAME + "...");
+    boolean status = PASS;
+
+    for (String disk : DISKS) {
+      BMFlushTest bft = new BMFlushTest();
+      bft.create_minibase();
+      bft.useDisk(disk);
+      status &= bft.test1();
+
+      bft = new BMFlushTest();
+      bft.create_minibase();
+      bft.useDisk(disk);
+      status &= bft.test2();
+    }
+
+    // display the final results
+    System.out.println();
+    if (status != PASS) {
+      System.out.println("Error(s) encountered during " + TEST_NAME + ".");
+    } else {
+      System.out.println("All " + TEST_NAME + " completed successfully!");
+    }
+
+  } // public static void main (String argv[])
+
+  /**
+   * Replaces the disk manager of the new database with the named one.
+   */
+  protected void useDisk(String disk) {
+
+    System.out.print("\n  Using " + disk + "\n");
+    if (disk.equals("ChannelDiskMgr")) {
+      Minibase.DiskManager = new ChannelDiskMgr(Minibase.DiskManager);
+    } else if (disk.equals("MappedDiskMgr")) {
+      Minibase.DiskManager = new MappedDiskMgr(Minibase.DiskManager);
+    }
+
+  } // protected void useDisk (String disk)
+
+  /**
+   * Writes a value at the start and at the end of a pinned page.
+   */
+  protected void stamp(Page pg, int value) {
+
+    Convert.setIntValue(value, 0, pg.getData());
+    Convert.setIntValue(value, PAGE_END, pg.getData());
+
+  } // protected void stamp (Page pg, int value)
+
+  /**
+   * Allocates the pages and writes the page number on each, then flushes.
+   *
+   * @param values filled in with what each page holds
+   * @return the first page, or null if the pages could not be set up
+   */
+  protected PageId createPages(int[] values) {
+
+    Page pg = new Page();
+    PageId firstPid;
+    try {
+      System.out.print("  - Allocate and write " + NUM_PAGES + " pages\n");
+      firstPid = Minibase.BufferManager.newPage(pg, NUM_PAGES);
+      Minibase.BufferManager.unpinPage(firstPid, UNPIN_CLEAN);
+      for (int i = 0; i < NUM_PAGES; i++) {
+        PageId pid = new PageId(firstPid.pid + i);
+        Minibase.BufferManager.pinPage(pid, pg, PIN_DISKIO);
+        values[i] = pid.pid;
+        stamp(pg, values[i]);
+        Minibase.BufferManager.unpinPage(pid, UNPIN_DIRTY);
+      }
+      Minibase.BufferManager.flushAllPages();
+    } catch (Exception e) {
+      System.err.print("*** Could not set up " + NUM_PAGES + " pages\n");
+      e.printStackTrace();
+      return null;
+    }
+    return firstPid;
+
+  } // protected PageId createPages (int[] values)
+
+  /**
+   * Reads every page straight from disk and checks its value.
+   *
+   * @param firstPid the first page
+   * @param values what each page should hold
+   */
+  protected boolean checkDisk(PageId firstPid, int[] values) {
+
+    Page pg = new Page();
+    for (int i = 0; i < NUM_PAGES; i++) {
+      PageId pid = new PageId(firstPid.pid + i);
+      Minibase.DiskManager.read_page(pid, pg);
+      if (Convert.getIntValue(0, pg.getData()) != values[i]
+          || Convert.getIntValue(PAGE_END, pg.getData()) != values[i]) {
+        System.err.print("*** Read wrong data back from disk for page " + pid.pid + "\n");
+        return FAIL;
+      }
+    }
+    return PASS;
+
+  } // protected boolean checkDisk (PageId firstPid, int[] values)
+
+  /**
+   * Dirties scattered pages, so the flush sees runs of several lengths with
+   * gaps between them, and checks that flushAllPages writes each dirty page
+   * once, leaves nothing dirty, and puts the latest contents on disk.
+   */
+  protected boolean test1() {
+
+    System.out.print("\n  Test 1 flushes runs of dirty pages with gaps between them:\n");
+    boolean status = PASS;
+
+    Page pg = new Page();
+    int[] values = new int[NUM_PAGES];
+    PageId firstPid = createPages(values);
+    if (firstPid == null) {
+      return FAIL;
+    }
+
+    System.out.print("  - Change some pages and flush, " + NUM_ROUNDS + " times\n");
+    Random random = new Random(74);
+    for (int round = 1; status == PASS && round <= NUM_ROUNDS; round++) {
+
+      // change about half of the pages, some of them twice
+      int numDirtied = 0;
+      boolean[] dirtied = new boolean[NUM_PAGES];
+      for (int k = 0; k < NUM_PAGES / 2; k++) {
+        int i = random.nextInt(NUM_PAGES);
+        PageId pid = new PageId(firstPid.pid + i);
+        Minibase.BufferManager.pinPage(pid, pg, PIN_DISKIO);
+        values[i] = round * 100000 + pid.pid;
+        stamp(pg, values[i]);
+        Minibase.BufferManager.unpinPage(pid, UNPIN_DIRTY);
+        if (!dirtied[i]) {
+          dirtied[i] = true;
+          numDirtied++;
+        }
+      }
+      if (Minibase.BufferManager.getNumDirty() != numDirtied) {
+        System.err.print("*** " + Minibase.BufferManager.getNumDirty()
+            + " frames are dirty, but " + numDirtied + " pages were changed\n");
+        status = FAIL;
+        break;
+      }
+
+      int writes = Minibase.DiskManager.getWriteCount();
+      Minibase.BufferManager.flushAllPages();
+      if (Minibase.BufferManager.getNumDirty() != 0) {
+        System.err.print("*** " + Minibase.BufferManager.getNumDirty()
+            + " frames are still dirty after flushAllPages\n");
+        status = FAIL;
+      } else if (Minibase.DiskManager.getWriteCount() - writes != numDirtied) {
+        System.err.print("*** flushAllPages wrote "
+            + (Minibase.DiskManager.getWriteCount() - writes) + " pages instead of "
+            + numDirtied + "\n");
+        status = FAIL;
+      } else {
+        status = checkDisk(firstPid, values);
+      }
+    }
+
+    if (status == PASS) {
+      System.out.print("  - Unpin a page that is not pinned, as dirty\n");
+      try {
+        Minibase.BufferManager.unpinPage(firstPid, UNPIN_DIRTY);
+        System.err.print("*** Unpinning a page that is not pinned did not fail\n");
+        status = FAIL;
+      } catch (IllegalArgumentException exc) {
+        System.out.print("  --> Failed as expected \n");
+      }
+      if (Minibase.BufferManager.getNumDirty() != 0) {
+        System.err.print("*** The failed unpin left the page dirty\n");
+        status = FAIL;
+      }
+    }
+
+    if (status == PASS)
+      System.out.print("  Test 1 completed successfully.\n");
+
+    return status;
+
+  } // protected boolean test1 ()
+
+  /**
+   * Counts the background writer threads that are alive.
+   */
+  protected int countWriters() {
+
+    int count = 0;
+    for (Thread t : Thread.getAllStackTraces().keySet()) {
+      if (t.getName().equals("bufmgr-bgwriter") && t.isAlive()) {
+        count++;
+      }
+    }
+    return count;
+
+  } // protected int countWriters ()
+
+  /**
+   * Leaves the background writer to clean the pool on its own: every dirty
+   * unpinned page must reach the disk with its latest contents, and a dirty
+   * page that is still pinned must not. Then starts and stops the writer
+   * from several threads at once, which must leave no writer running.
+   */
+  protected boolean test2() {
+
+    System.out.print("\n  Test 2 has the background writer clean the pool:\n");
+    boolean status = PASS;
+
+    Page pg = new Page();
+    int[] values = new int[NUM_PAGES];
+    final PageId firstPid = createPages(values);
+    if (firstPid == null) {
+      return FAIL;
+    }
+
+    System.out.print("  - Change every page, keeping the first one pinned\n");
+    Minibase.BufferManager.pinPage(firstPid, pg, PIN_DISKIO);
+    int[] latest = values.clone();
+    for (int i = 0; i < NUM_PAGES; i++) {
+      PageId pid = new PageId(firstPid.pid + i);
+      Minibase.BufferManager.pinPage(pid, pg, PIN_DISKIO);
+      latest[i] = 100000 + pid.pid;
+      stamp(pg, latest[i]);
+      Minibase.BufferManager.unpinPage(pid, UNPIN_DIRTY);
+    }
+    for (int i = 1; i < NUM_PAGES; i++) {
+      values[i] = latest[i];
+    }
+
+    System.out.print("  - Start the background writer and wait for it\n");
+    Minibase.BufferManager.startBackgroundWriter(1, 8);
+    long deadline = System.currentTimeMillis() + MAX_WAIT;
+    while (Minibase.BufferManager.getNumDirty() > 1 && System.currentTimeMillis() < deadline) {
+      try {
+        Thread.sleep(1);
+      } catch (InterruptedException e) {
+        break;
+      }
+    }
+    Minibase.BufferManager.stopBackgroundWriter();
+    if (Minibase.BufferManager.getNumDirty() != 1) {
+      System.err.print("*** " + Minibase.BufferManager.getNumDirty()
+          + " frames are dirty after the background writer ran\n");
+      status = FAIL;
+    }
+    if (status == PASS) {
+      status = checkDisk(firstPid, values);
+    }
+
+    System.out.print("  - Unpin the first page and flush it\n");
+    Minibase.BufferManager.unpinPage(firstPid, UNPIN_CLEAN);
+    Minibase.BufferManager.flushAllPages();
+    if (status == PASS) {
+      status = checkDisk(firstPid, latest);
+    }
+
+    System.out.print("  - Start and stop the writer from several threads at once\n");
+    Thread[] threads = new Thread[4];
+    for (int t = 0; t < threads.length; t++) {
+      threads[t] = new Thread() {
+        public void run() {
+          for (int k = 0; k < 50; k++) {
+            Minibase.BufferManager.startBackgroundWriter(1, 8);
+            Minibase.BufferManager.stopBackgroundWriter();
+          }
+          Minibase.BufferManager.startBackgroundWriter(1, 8);
+        }
+      };
+      threads[t].start();
+    }
+    for (Thread thread : threads) {
+      try {
+        thread.join();
+      } catch (InterruptedException e) {
+        status = FAIL;
+      }
+    }
+    if (countWriters() != 1) {
+      System.err.print("*** " + countWriters() + " background writers are running instead of 1\n");
+      status = FAIL;
+    }
+    Minibase.BufferManager.stopBackgroundWriter();
+    if (countWriters() != 0) {
+      System.err.print("*** " + countWriters() + " background writers are still running\n");
+      status = FAIL;
+    }
+
+    if (status == PASS)
+      System.out.print("  Test 2 completed successfully.\n");
+
+    return status;
+
+  } // protected boolean test2 ()
+
+} // class BMFlushTest extends TestDriver
@@ -0,0 +1,461 @@
+package tests;
+
+import global.Convert;
+import global.Minibase;
+import global.Page;
+import global.PageId;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Tests for the ways of using the buffer pool beyond pinning one page at a
+ * time: pinning runs of pages, growing and shrinking the pool, and finding
+ * the pages used most.
+ */
+class BMPoolTest extends TestDriver {
+
+  /** The display name of the test suite. */
+  private static final String TEST_NAME = "buffer pool tests";
+
+  /** Number of frames in the pool. */
+  private static final int POOL_SIZE = 20;
+
+  /** Number of pages used, many more than fit in the pool. */
+  private static final int NUM_PAGES = 200;
+
+  /** Number of pages most pins go to in test 3. */
+  private static final int NUM_HOT = 10;
+
+  /** Offset of the last int on a page. */
+  private static final int PAGE_END = 1020;
+
+  /**
+   * Test application entry point; runs all tests.
+   */
+  public static void main(String argv[]) {
+
+    System.out.println("\n" + "Running " + TEST_NAME + "...");
+    boolean status = PASS;
+
+    BMPoolTest bpt = new BMPoolTest();
+    bpt.BUF_SIZE = POOL_SIZE;
+    bpt.create_minibase();
+    status &= bpt.test1();
+
+    bpt = new BMPoolTest();
+    bpt.BUF_SIZE = POOL_SIZE;
+    bpt.create_minibase();
+    status &= bpt.test2();
+
+    bpt = new BMPoolTest();
+    bpt.BUF_SIZE = POOL_SIZE;
+    bpt.create_minibase();
+    status &= bpt.test3();
+
+    // display the final results
+    System.out.println();
+    if (status != PASS) {
+      System.out.println("Error(s) encountered during " + TEST_NAME + ".");
+    } else {
+      System.out.println("All " + TEST_NAME + " completed successfully!");
+    }
+
+  } // public static void main (String argv[])
+
+  /**
+   * Allocates the pages and writes the number of each, counting from 0, at
+   * its start and at its end.
+   *
+   * @return the first page, or null if the pages could not be set up
+   */
+  protected PageId createPages() {
+
+    Page pg = new Page();
+    PageId firstPid;
+    try {
+      System.out.print("  - Allocate and write " + NUM_PAGES + " pages\n");
+      firstPid = Minibase.BufferManager.newPage(pg, NUM_PAGES);
+      Minibase.BufferManager.unpinPage(firstPid, UNPIN_CLEAN);
+      for (int i = 0; i < NUM_PAGES; i++) {
+        PageId pid = new PageId(firstPid.pid + i);
+        Minibase.BufferManager.pinPage(pid, pg, PIN_DISKIO);
+        Convert.setIntValue(i, 0, pg.getData());
+        Convert.setIntValue(i, PAGE_END, pg.getData());
+        Minibase.BufferManager.unpinPage(pid, UNPIN_DIRTY);
+      }
+      Minibase.BufferManager.flushAllPages();
+    } catch (Exception e) {
+      System.err.print("*** Could not set up " + NUM_PAGES + " pages\n");
+      e.printStackTrace();
+      return null;
+    }
+    return firstPid;
+
+  } // protected PageId createPages ()
+
+  /**
+   * Tells whether a page holds the number written on it by createPages.
+   */
+  protected boolean holds(Page pg, int i) {
+
+    return Convert.getIntValue(0, pg.getData()) == i
+        && Convert.getIntValue(PAGE_END, pg.getData()) == i;
+
+  } // protected boolean holds (Page pg, int i)
+
+  /**
+   * Pins pages one by one and checks that each holds the given value plus
+   * its number.
+   *
+   * @param from the number of the first page to check, counting from 0
+   */
+  protected boolean checkPages(PageId firstPid, int from, int count, int value) {
+
+    Page pg = new Page();
+    for (int i = from; i < from + count; i++) {
+      PageId pid = new PageId(firstPid.pid + i);
+      Minibase.BufferManager.pinPage(pid, pg, PIN_DISKIO);
+      boolean ok = holds(pg, value + i);
+      Minibase.BufferManager.unpinPage(pid, UNPIN_CLEAN);
+      if (!ok) {
+        System.err.print("*** Page " + pid.pid + " holds the wrong data\n");
+        return FAIL;
+      }
+    }
+    return PASS;
+
+  } // protected boolean checkPages (PageId firstPid, int from, int count, int value)
+
+  /**
+   * Writes a value at the start and at the end of a pinned page.
+   */
+  protected void stamp(Page pg, int value) {
+
+    Convert.setIntValue(value, 0, pg.getData());
+    Convert.setIntValue(value, PAGE_END, pg.getData());
+
+  } // protected void stamp (Page pg, int value)
+
+  /**
+   * Checks that the pool has the given number of frames.
+   */
+  protected boolean checkSize(int got, int expected) {
+
+    if (got != expected || Minibase.BufferManager.getNumBuffers() != expected) {
+      System.err.print("*** resize returned " + got + " and the pool has "
+          + Minibase.BufferManager.getNumBuffers() + " frames instead of " + expected + "\n");
+      return FAIL;
+    }
+    return PASS;
+
+  } // protected boolean checkSize (int got, int expected)
+
+  /**
+   * Checks that the number of frames pinned is as expected.
+   */
+  protected boolean checkPinned(int expected) {
+
+    int pinned = Minibase.BufferManager.getNumBuffers()
+        - Minibase.BufferManager.getNumUnpinned();
+    if (pinned != expected) {
+      System.err.print("*** " + pinned + " frames are pinned instead of " + expected + "\n");
+      return FAIL;
+    }
+    return PASS;
+
+  } // protected boolean checkPinned (int expected)
+
+  /**
+   * Pins runs of pages, some partly in the pool already, and checks what is
+   * on them and that each is pinned once. Then checks that a run that does
+   * not fit, or is not in the database, is refused and leaves nothing pinned.
+   */
+  protected boolean test1() {
+
+    System.out.print("\n  Test 1 pins runs of consecutive pages:\n");
+    boolean status = PASS;
+
+    PageId firstPid = createPages();
+    if (firstPid == null) {
+      return FAIL;
+    }
+
+    System.out.print("  - Pin and unpin runs of 1 to 8 pages\n");
+    Random random = new Random(19);
+    Page pg = new Page();
+    for (int round = 0; status == PASS && round < 300; round++) {
+      int count = 1 + random.nextInt(8);
+      int start = random.nextInt(NUM_PAGES - count);
+
+      // leave a page in the middle of some runs in the pool
+      if (round % 3 == 0) {
+        PageId pid = new PageId(firstPid.pid + start + count / 2);
+        Minibase.BufferManager.pinPage(pid, pg, PIN_DISKIO);
+        Minibase.BufferManager.unpinPage(pid, UNPIN_CLEAN);
+      }
+
+      Page[] out = new Page[count];
+      for (int k = 0; k < count; k++) {
+        out[k] = new Page();
+      }
+      Minibase.BufferManager.pinRun(new PageId(firstPid.pid + start), count, out);
+      status = checkPinned(count);
+      for (int k = 0; k < count; k++) {
+        if (status == PASS && !holds(out[k], start + k)) {
+          System.err.print("*** Page " + (firstPid.pid + start + k)
+              + " of a run holds the wrong data\n");
+          status = FAIL;
+        }
+        Minibase.BufferManager.unpinPage(new PageId(firstPid.pid + start + k), UNPIN_CLEAN);
+      }
+    }
+    if (status == PASS) {
+      status = checkPinned(0);
+    }
+
+    if (status == PASS) {
+      System.out.print("  - Pin a run that does not fit in the pool\n");
+      PageId[] held = new PageId[POOL_SIZE - 5];
+      for (int i = 0; i < held.length; i++) {
+        held[i] = new PageId(firstPid.pid + 100 + i);
+        Minibase.BufferManager.pinPage(held[i], pg, PIN_DISKIO);
+      }
+      Page[] out = new Page[10];
+      for (int k = 0; k < out.length; k++) {
+        out[k] = new Page();
+      }
+      try {
+        Minibase.BufferManager.pinRun(firstPid, out.length, out);
+        System.err.print("*** Pinning a run bigger than the free frames did not fail\n");
+        status = FAIL;
+      } catch (IllegalStateException exc) {
+        System.out.print("  --> Failed as expected \n");
+      }
+      if (status == PASS) {
+        status = checkPinned(held.length);
+      }
+      for (PageId pid : held) {
+        Minibase.BufferManager.unpinPage(pid, UNPIN_CLEAN);
+      }
+    }
+
+    if (status == PASS) {
+      System.out.print("  - Pin a run past the end of the database\n");
+      Page[] out = new Page[5];
+      for (int k = 0; k < out.length; k++) {
+        out[k] = new Page();
+      }
+      try {
+        Minibase.BufferManager.pinRun(new PageId(DB_SIZE - 2), out.length, out);
+        System.err.print("*** Pinning a run past the end of the database did not fail\n");
+        status = FAIL;
+      } catch (IllegalArgumentException exc) {
+        System.out.print("  --> Failed as expected \n");
+      }
+      if (status == PASS) {
+        status = checkPinned(0);
+      }
+    }
+
+    if (status == PASS)
+      System.out.print("  Test 1 completed successfully.\n");
+
+    return status;
+
+  } // protected boolean test1 ()
+
+  /**
+   * Grows and shrinks the pool. A shrink writes the dirty pages of the
+   * frames it takes out, and does not wait for pinned ones: they leave the
+   * pool on their last unpin, with their changes, and a grow stops short of
+   * them until then.
+   */
+  protected boolean test2() {
+
+    System.out.print("\n  Test 2 grows and shrinks the pool:\n");
+    boolean status = PASS;
+
+    PageId firstPid = createPages();
+    if (firstPid == null) {
+      return FAIL;
+    }
+
+    System.out.print("  - Grow the pool to " + (3 * POOL_SIZE) + " frames and fill it\n");
+    status = checkSize(Minibase.BufferManager.resize(3 * POOL_SIZE), 3 * POOL_SIZE);
+    Page pg = new Page();
+    if (status == PASS) {
+      for (int i = 0; i < 3 * POOL_SIZE; i++) {
+        Minibase.BufferManager.pinPage(new PageId(firstPid.pid + i), pg, PIN_DISKIO);
+        stamp(pg, 1000 + i);
+      }
+      status = checkPinned(3 * POOL_SIZE);
+      for (int i = 0; i < 3 * POOL_SIZE; i++) {
+        Minibase.BufferManager.unpinPage(new PageId(firstPid.pid + i), UNPIN_DIRTY);
+      }
+    }
+
+    if (status == PASS) {
+      System.out.print("  - Shrink it to " + (POOL_SIZE / 2) + " frames and read the pages back\n");
+      status = checkSize(Minibase.BufferManager.resize(POOL_SIZE / 2), POOL_SIZE / 2);
+    }
+    if (status == PASS) {
+      status = checkPages(firstPid, 0, 3 * POOL_SIZE, 1000);
+    }
+
+    if (status == PASS) {
+      System.out.print("  - Pin more pages than the smaller pool holds\n");
+      for (int i = 0; i < POOL_SIZE / 2; i++) {
+        Minibase.BufferManager.pinPage(new PageId(firstPid.pid + i), pg, PIN_DISKIO);
+      }
+      try {
+        Minibase.BufferManager.pinPage(new PageId(firstPid.pid + POOL_SIZE), pg, PIN_DISKIO);
+        System.err.print("*** Pinning one more page than the pool holds did not fail\n");
+        status = FAIL;
+      } catch (IllegalStateException exc) {
+        System.out.print("  --> Failed as expected \n");
+      }
+      for (int i = 0; i < POOL_SIZE / 2; i++) {
+        Minibase.BufferManager.unpinPage(new PageId(firstPid.pid + i), UNPIN_CLEAN);
+      }
+    }
+
+    Page[] held = new Page[POOL_SIZE];
+    if (status == PASS) {
+      System.out.print("  - Pin " + POOL_SIZE + " pages and shrink the pool under them\n");
+      status = checkSize(Minibase.BufferManager.resize(POOL_SIZE), POOL_SIZE);
+      for (int i = 0; status == PASS && i < POOL_SIZE; i++) {
+        held[i] = new Page();
+        Minibase.BufferManager.pinPage(new PageId(firstPid.pid + i), held[i], PIN_DISKIO);
+      }
+    }
+    if (status == PASS) {
+      status = checkSize(Minibase.BufferManager.resize(POOL_SIZE / 4), POOL_SIZE / 4);
+    }
+    if (status == PASS) {
+      System.out.print("  - Grow the pool while the pages are still pinned\n");
+      status = checkSize(Minibase.BufferManager.resize(POOL_SIZE), POOL_SIZE / 4);
+    }
+
+    if (status == PASS) {
+      System.out.print("  - Change the pages and unpin them\n");
+      for (int i = 0; i < POOL_SIZE; i++) {
+        stamp(held[i], 2000 + i);
+        Minibase.BufferManager.unpinPage(new PageId(firstPid.pid + i), UNPIN_DIRTY);
+      }
+      status = checkPinned(0);
+    }
+    if (status == PASS) {
+      status = checkSize(Minibase.BufferManager.resize(POOL_SIZE), POOL_SIZE);
+    }
+    if (status == PASS) {
+      status = checkPages(firstPid, 0, POOL_SIZE, 2000);
+    }
+    if (status == PASS) {
+      status = checkPages(firstPid, POOL_SIZE, 2 * POOL_SIZE, 1000);
+    }
+
+    if (status == PASS) {
+      System.out.print("  - Resize to 0 frames, and past the most the pool can have\n");
+      int[] sizes = { 0, Integer.MAX_VALUE };
+      for (int numbufs : sizes) {
+        try {
+          Minibase.BufferManager.resize(numbufs);
+          System.err.print("*** Resizing the pool to " + numbufs + " frames did not fail\n");
+          status = FAIL;
+        } catch (IllegalArgumentException exc) {
+          System.out.print("  --> Failed as expected \n");
+        }
+      }
+    }
+
+    if (status == PASS)
+      System.out.print("  Test 2 completed successfully.\n");
+
+    return status;
+
+  } // protected boolean test2 ()
+
+  /**
+   * Several threads pin pages, most of the time one of a few hot pages
+   * spread over the database; the pages reported as the most hit must be
+   * the hot ones, and a second report must be the same as the first.
+   */
+  protected boolean test3() {
+
+    System.out.print("\n  Test 3 finds the most hit pages:\n");
+    boolean status = PASS;
+
+    final PageId firstPid = createPages();
+    if (firstPid == null) {
+      return FAIL;
+    }
+
+    System.out.print("  - Pin " + NUM_HOT + " hot pages most of the time, from 4 threads\n");
+    Thread[] workers = new Thread[4];
+    final int[] failures = new int[workers.length];
+    for (int t = 0; t < workers.length; t++) {
+      final int me = t;
+      final Random random = new Random(21 + t);
+      workers[t] = new Thread() {
+        public void run() {
+          Page pg = new Page();
+          for (int op = 0; op < 20000; op++) {
+            int i = random.nextInt(5) != 0 ? random.nextInt(NUM_HOT) * 17 : random.nextInt(NUM_PAGES);
+            PageId pid = new PageId(firstPid.pid + i);
+            try {
+              Minibase.BufferManager.pinPage(pid, pg, PIN_DISKIO);
+            } catch (IllegalStateException exc) {
+              continue; // the other threads hold every frame
+            }
+            if (!holds(pg, i)) {
+              failures[me]++;
+            }
+            Minibase.BufferManager.unpinPage(pid, UNPIN_CLEAN);
+          }
+        }
+      };
+      workers[t].start();
+    }
+    for (Thread worker : workers) {
+      try {
+        worker.join();
+      } catch (InterruptedException exc) {
+        status = FAIL;
+      }
+    }
+    for (int n : failures) {
+      if (n != 0) {
+        System.err.print("*** " + n + " pins read the wrong data\n");
+        status = FAIL;
+      }
+    }
+
+    if (status == PASS) {
+      System.out.print("  - Get the " + NUM_HOT + " most hit pages\n");
+      int[][] top = Minibase.BufferManager.getTopPages(NUM_HOT);
+      int found = 0;
+      for (int[] row : top) {
+        int i = row[0] - firstPid.pid;
+        if (i % 17 == 0 && i / 17 < NUM_HOT) {
+          found++;
+        }
+      }
+      if (found < NUM_HOT - 1) {
+        System.err.print("*** Only " + found + " of the " + NUM_HOT
+            + " hot pages are among the most hit\n");
+        status = FAIL;
+      }
+      if (!Arrays.deepEquals(top, Minibase.BufferManager.getTopPages(NUM_HOT))) {
+        System.err.print("*** A second report of the most hit pages is not the same\n");
+        status = FAIL;
+      }
+    }
+
+    if (status == PASS)
+      System.out.print("  Test 3 completed successfully.\n");
+
+    return status;
+
+  } // protected boolean test3 ()
+
+} // class BMPoolTest extends TestDriver
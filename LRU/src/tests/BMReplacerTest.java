@@ -0,0 +1,385 @@
+package tests;
+
+import bufmgr.AccessHint;
+import bufmgr.BufMgr;
+import global.Minibase;
+import global.Page;
+import global.PageId;
+
+/**
+ * Tests for the choices the replacement policies make through the buffer
+ * manager: what they remember of evicted pages, and which page they evict.
+ * Each test runs on an empty pool of its own, with the policy it is about.
+ */
+class BMReplacerTest extends TestDriver {
+
+  /** The display name of the test suite. */
+  private static final String TEST_NAME = "buffer manager replacer tests";
+
+  /** Number of frames in the pools the tests use. */
+  private static final int POOL_SIZE = 16;
+
+  /** Number of pages used, more than fit in the pool. */
+  private static final int NUM_PAGES = 64;
+
+  /** Number of frames in the pool of test 2, much larger than its working set. */
+  private static final int LARGE_POOL_SIZE = 50;
+
+  /** Number of pages test 2 loops over. */
+  private static final int WORKING_SET = 10;
+
+  /** Policies test 3 runs with, and whether each evicts the least recently hit page. */
+  private static final String[] ORDER_POLICIES = { "Lru", "Mru" };
+  private static final boolean[] EVICTS_LEAST_RECENT = { true, false };
+
+  /** Number of consecutive pages a scan reads before it is read ahead. */
+  private static final int TRIGGER = 3;
+
+  /** Number of pages test 4 reads ahead, the first window of a stream. */
+  private static final int WINDOW = 4;
+
+  /** Longest wait for pages to be read ahead, in milliseconds. */
+  private static final long MAX_WAIT = 10000;
+
+  /** The first of the pages, allocated before the test's pool replaces the default one. */
+  protected PageId firstPid;
+
+  /**
+   * Test application entry point; runs all tests.
+   */
+  public static void main(String argv[]) {
+
+    System.out.println("\n" + "Running " + TEST_NAME + "...");
+    boolean status = PASS;
+
+    BMReplacerTest brt = new BMReplacerTest();
+    brt.create_minibase();
+    status &= brt.test1();
+
+    brt = new BMReplacerTest();
+    brt.create_minibase();
+    status &= brt.test2();
+
+    for (String policy : ORDER_POLICIES) {
+      brt = new BMReplacerTest();
+      brt.create_minibase();
+      status &= brt.test3(policy);
+    }
+
+    brt = new BMReplacerTest();
+    brt.create_minibase();
+    status &= brt.test4();
+
+    brt = new BMReplacerTest();
+    brt.create_minibase();
+    status &= brt.test5();
+
+    // display the final results
+    System.out.println();
+    if (status != PASS) {
+      System.out.println("Error(s) encountered during " + TEST_NAME + ".");
+    } else {
+      System.out.println("All " + TEST_NAME + " completed successfully!");
+    }
+
+  } // public static void main (String argv[])
+
+  /**
+   * Allocates the pages, then replaces the buffer manager with an empty one
+   * of the given policy and size. The space map page is brought into the new
+   * pool by allocating and freeing a page, so that later deallocations do
+   * not miss.
+   *
+   * @return true if the pages could be set up
+   */
+  protected boolean usePool(String policy, int frames) {
+
+    System.out.print("  - Use an empty pool of " + frames + " frames with " + policy + "\n");
+    Page pg = new Page();
+    try {
+      firstPid = Minibase.BufferManager.newPage(pg, NUM_PAGES);
+      Minibase.BufferManager.unpinPage(firstPid, UNPIN_CLEAN);
+      Minibase.BufferManager.flushAllPages();
+      Minibase.BufferManager = new BufMgr(frames, frames, policy);
+      PageId pid = Minibase.BufferManager.newPage(pg, 1);
+      Minibase.BufferManager.unpinPage(pid, UNPIN_CLEAN);
+      Minibase.BufferManager.freePage(pid);
+    } catch (Exception e) {
+      System.err.print("*** Could not set up " + NUM_PAGES + " pages\n");
+      e.printStackTrace();
+      return FAIL;
+    }
+    return PASS;
+
+  } // protected boolean usePool (String policy, int frames)
+
+  /**
+   * Pins and unpins one of the pages, counting from 0.
+   */
+  protected void touch(int i, AccessHint hint) {
+
+    PageId pid = new PageId(firstPid.pid + i);
+    Minibase.BufferManager.pinPage(pid, new Page(), PIN_DISKIO, hint);
+    Minibase.BufferManager.unpinPage(pid, UNPIN_CLEAN);
+
+  } // protected void touch (int i, AccessHint hint)
+
+  /**
+   * Pins and unpins pages from the first on until the pool has no empty
+   * frame left.
+   *
+   * @return the number of pages pinned
+   */
+  protected int fill() {
+
+    int count = 0;
+    while (Minibase.BufferManager.getMetrics().getNumFree() > 0) {
+      touch(count++, AccessHint.NORMAL);
+    }
+    return count;
+
+  } // protected int fill ()
+
+  /**
+   * Waits until the given number of pages have been read ahead.
+   *
+   * @return true if they were read in time
+   */
+  protected boolean waitPrefetched(int count) {
+
+    long deadline = System.currentTimeMillis() + MAX_WAIT;
+    while (Minibase.BufferManager.getNumPrefetched() < count
+        && System.currentTimeMillis() < deadline) {
+      try {
+        Thread.sleep(1);
+      } catch (InterruptedException e) {
+        break;
+      }
+    }
+    return Minibase.BufferManager.getNumPrefetched() >= count;
+
+  } // protected boolean waitPrefetched (int count)
+
+  /**
+   * Gets one of the figures the policy reports about itself.
+   */
+  protected long detail(String name) {
+
+    Long value = Minibase.BufferManager.getMetrics().getReplacerDetails().get(name);
+    return (value == null) ? -1 : value.longValue();
+
+  } // protected long detail (String name)
+
+  /**
+   * Evicts a page through a hint rather than through LRU-K's own choice; its
+   * history must still be kept, and dropped only once the page is
+   * deallocated.
+   */
+  protected boolean test1() {
+
+    System.out.print("\n  Test 1 keeps the LRU-K history of pages evicted through a hint:\n");
+    boolean status = usePool("LruK", POOL_SIZE);
+
+    if (status == PASS) {
+      System.out.print("  - Fill the pool, then evict a page pinned with ONCE\n");
+      int count = fill();
+      touch(0, AccessHint.ONCE);
+      touch(count, AccessHint.NORMAL);
+      if (detail("retained") != 1) {
+        System.err.print("*** LRU-K retains the history of " + detail("retained")
+            + " pages instead of 1\n");
+        status = FAIL;
+      }
+    }
+
+    if (status == PASS) {
+      System.out.print("  - Deallocate the evicted page\n");
+      Minibase.BufferManager.freePage(firstPid);
+      if (detail("retained") != 0) {
+        System.err.print("*** LRU-K still retains the history of " + detail("retained")
+            + " pages\n");
+        status = FAIL;
+      }
+    }
+
+    if (status == PASS)
+      System.out.print("  Test 1 completed successfully.\n");
+
+    return status;
+
+  } // protected boolean test1 ()
+
+  /**
+   * Loops over a working set that fits in the pool with each of the hints a
+   * scan uses; the hints must only choose victims once the pool is full, so
+   * after the first pass every pin is a hit.
+   */
+  protected boolean test2() {
+
+    System.out.print("\n  Test 2 loops with hints over a working set that fits in the pool:\n");
+    boolean status = usePool(System.getProperty(BufMgr.REPLACER_PROPERTY, "Lru"), LARGE_POOL_SIZE);
+
+    AccessHint[] hints = { AccessHint.SEQUENTIAL, AccessHint.LOOP, AccessHint.ONCE };
+    for (int h = 0; status == PASS && h < hints.length; h++) {
+      System.out.print("  - Pin " + WORKING_SET + " pages with " + hints[h] + ", 5 times over\n");
+      int first = h * WORKING_SET;
+      for (int i = first; i < first + WORKING_SET; i++) {
+        touch(i, hints[h]);
+      }
+      long misses = Minibase.BufferManager.getMetrics().getMisses();
+      for (int pass = 1; pass < 5; pass++) {
+        for (int i = first; i < first + WORKING_SET; i++) {
+          touch(i, hints[h]);
+        }
+      }
+      misses = Minibase.BufferManager.getMetrics().getMisses() - misses;
+      if (misses != 0) {
+        System.err.print("*** The passes after the first missed " + misses + " times\n");
+        status = FAIL;
+      }
+    }
+
+    if (status == PASS)
+      System.out.print("  Test 2 completed successfully.\n");
+
+    return status;
+
+  } // protected boolean test2 ()
+
+  /**
+   * Hits the pages of a full pool in the reverse of their frame order, then
+   * misses; the policy must evict by the order of the hits, not of the
+   * frames: LRU the first page hit, which is the last one loaded, and MRU the
+   * last page hit.
+   */
+  protected boolean test3(String policy) {
+
+    System.out.print("\n  Test 3 evicts by the order of hits made out of frame order:\n");
+    boolean status = usePool(policy, POOL_SIZE);
+
+    if (status == PASS) {
+      int p = 0;
+      while (!ORDER_POLICIES[p].equals(policy)) {
+        p++;
+      }
+      int count = fill();
+      int victim = EVICTS_LEAST_RECENT[p] ? count - 1 : 0;
+
+      // the frames the database's own pages hold were used before any of
+      // ours, so the least recent policies evict those first
+      int misses = EVICTS_LEAST_RECENT[p] ? POOL_SIZE - count + 1 : 1;
+      System.out.print("  - Fill the pool, hit its pages in reverse, then miss " + misses + " times\n");
+      for (int i = count - 1; i >= 0; i--) {
+        touch(i, AccessHint.NORMAL);
+      }
+      for (int i = count; i < count + misses; i++) {
+        touch(i, AccessHint.NORMAL);
+      }
+
+      System.out.print("  - Check that page " + victim + " was evicted\n");
+      int reads = Minibase.DiskManager.getReadCount();
+      touch(victim, AccessHint.NORMAL);
+      if (Minibase.DiskManager.getReadCount() - reads != 1) {
+        System.err.print("*** " + policy + " did not evict page " + victim + "\n");
+        status = FAIL;
+      }
+    }
+
+    if (status == PASS)
+      System.out.print("  Test 3 completed successfully.\n");
+
+    return status;
+
+  } // protected boolean test3 (String policy)
+
+  /**
+   * Reads pages ahead with ARC, then pins each of them once; reading a page
+   * ahead is not a reference, so none of them may count as seen twice and
+   * be moved to T2.
+   */
+  protected boolean test4() {
+
+    System.out.print("\n  Test 4 counts the first pin of a page read ahead as its first use:\n");
+    boolean status = usePool("Arc", POOL_SIZE);
+
+    int next = 0;
+    if (status == PASS) {
+      System.out.print("  - Start a scan, and wait for " + WINDOW + " pages to be read ahead\n");
+      Minibase.BufferManager.startReadAhead(WINDOW);
+      while (next < TRIGGER) {
+        touch(next++, AccessHint.NORMAL);
+      }
+      if (!waitPrefetched(WINDOW)) {
+        System.err.print("*** Only " + Minibase.BufferManager.getNumPrefetched()
+            + " pages were read ahead\n");
+        status = FAIL;
+      }
+    }
+
+    if (status == PASS) {
+      System.out.print("  - Pin them once each\n");
+      long seenTwice = detail("t2");
+      for (int i = 0; i < WINDOW; i++) {
+        touch(next++, AccessHint.NORMAL);
+      }
+      Minibase.BufferManager.stopReadAhead();
+      if (detail("t2") != seenTwice) {
+        System.err.print("*** ARC counts " + (detail("t2") - seenTwice)
+            + " of them as seen twice\n");
+        status = FAIL;
+      }
+    }
+    Minibase.BufferManager.stopReadAhead();
+
+    if (status == PASS)
+      System.out.print("  Test 4 completed successfully.\n");
+
+    return status;
+
+  } // protected boolean test4 ()
+
+  /**
+   * Prefetches pages with ARC, then pins each of them once; as with pages
+   * read ahead by a scan, none of them may be moved to T2.
+   */
+  protected boolean test5() {
+
+    System.out.print("\n  Test 5 counts the first pin of a prefetched page as its first use:\n");
+    boolean status = usePool("Arc", POOL_SIZE);
+
+    if (status == PASS) {
+      System.out.print("  - Prefetch " + WINDOW + " pages and wait for them\n");
+      PageId[] pids = new PageId[WINDOW];
+      for (int i = 0; i < WINDOW; i++) {
+        pids[i] = new PageId(firstPid.pid + i);
+      }
+      Minibase.BufferManager.prefetch(pids);
+      if (!waitPrefetched(WINDOW)) {
+        System.err.print("*** Only " + Minibase.BufferManager.getNumPrefetched()
+            + " pages were prefetched\n");
+        status = FAIL;
+      }
+    }
+
+    if (status == PASS) {
+      System.out.print("  - Pin them once each\n");
+      long seenTwice = detail("t2");
+      for (int i = 0; i < WINDOW; i++) {
+        touch(i, AccessHint.NORMAL);
+      }
+      if (detail("t2") != seenTwice) {
+        System.err.print("*** ARC counts " + (detail("t2") - seenTwice)
+            + " of them as seen twice\n");
+        status = FAIL;
+      }
+    }
+    Minibase.BufferManager.stopReadAhead();
+
+    if (status == PASS)
+      System.out.print("  Test 5 completed successfully.\n");
+
+    return status;
+
+  } // protected boolean test5 ()
+
+} // class BMReplacerTest extends TestDriver
@@ -0,0 +1,290 @@
+package tests;
+
+import diskmgr.ChannelDiskMgr;
+import diskmgr.MappedDiskMgr;
+import global.Convert;
+import global.Minibase;
+import global.Page;
+import global.PageId;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Concurrency tests for the bufmgr layer: several threads pin, unpin and
+ * dirty pages at once, in a pool much smaller than the set of pages they
+ * use, so frames are evicted and written under them all the time.
+ */
+class BMStressTest extends TestDriver {
+
+  /** The display name of the test suite. */
+  private static final String TEST_NAME = "buffer manager stress tests";
+
+  /** Number of threads working at once. */
+  private static final int NUM_THREADS = 8;
+
+  /** Number of pages the threads share. */
+  private static final int NUM_PAGES = 60;
+
+  /** Number of frames in the pool; each thread holds at most one pin. */
+  private static final int POOL_SIZE = 15;
+
+  /** Pins each thread makes. */
+  private static final int OPS_PER_THREAD = 50000;
+
+  /** Disk managers the tests run over. */
+  private static final String[] DISKS = { "DiskMgr", "ChannelDiskMgr", "MappedDiskMgr" };
+
+  /** Errors seen by the worker threads. */
+  private AtomicInteger errors = new AtomicInteger();
+
+  /**
+   * Test application entry point; runs all tests.
+   */
+  public static void main(String argv[]) {
+
+    System.out.println("\n" + "Running " + TEST_NAME + "...");
+    boolean status = PASS;
+
+    for (String disk : DISKS) {
+      BMStressTest bst = new BMStressTest();
+      bst.BUF_SIZE = POOL_SIZE;
+      bst.create_minibase();
+      bst.useDisk(disk);
+      status &= bst.test1();
+
+      bst = new BMStressTest();
+      bst.BUF_SIZE = POOL_SIZE;
+      bst.create_minibase();
+      bst.useDisk(disk);
+      status &= bst.test2();
+    }
+
+    // display the final results
+    System.out.println();
+    if (status != PASS) {
+      System.out.println("Error(s) encountered during " + TEST_NAME + ".");
+    } else {
+      System.out.println("All " + TEST_NAME + " completed successfully!");
+    }
+
+  } // public static void main (String argv[])
+
+  /**
+   * Replaces the disk manager of the new database with the named one.
+   */
+  protected void useDisk(String disk) {
+
+    System.out.print("\n  Using " + disk + "\n");
+    if (disk.equals("ChannelDiskMgr")) {
+      Minibase.DiskManager = new ChannelDiskMgr(Minibase.DiskManager);
+    } else if (disk.equals("MappedDiskMgr")) {
+      Minibase.DiskManager = new MappedDiskMgr(Minibase.DiskManager);
+    }
+
+  } // protected void useDisk (String disk)
+
+  /**
+   * Allocates the shared pages and writes the page number + 99999 on each.
+   *
+   * @return the first page, or null if the pages could not be set up
+   */
+  protected PageId createPages() {
+
+    Page pg = new Page();
+    PageId firstPid;
+    try {
+      firstPid = Minibase.BufferManager.newPage(pg, NUM_PAGES);
+      Minibase.BufferManager.unpinPage(firstPid, UNPIN_CLEAN);
+      for (int i = 0; i < NUM_PAGES; i++) {
+        PageId pid = new PageId(firstPid.pid + i);
+        Minibase.BufferManager.pinPage(pid, pg, PIN_DISKIO);
+        Convert.setIntValue(pid.pid + 99999, 0, pg.getData());
+        Convert.setIntValue(0, 4, pg.getData());
+        Minibase.BufferManager.unpinPage(pid, UNPIN_DIRTY);
+      }
+    } catch (Exception e) {
+      System.err.print("*** Could not set up " + NUM_PAGES + " pages\n");
+      e.printStackTrace();
+      return null;
+    }
+    return firstPid;
+
+  } // protected PageId createPages ()
+
+  /**
+   * Runs the workers to the end; a worker that throws counts as an error.
+   */
+  protected void runAll(Thread[] workers) {
+
+    for (Thread worker : workers) {
+      worker.setUncaughtExceptionHandler(new Thread.UncaughtExceptionHandler() {
+        public void uncaughtException(Thread t, Throwable e) {
+          System.err.print("*** " + t.getName() + " failed\n");
+          e.printStackTrace();
+          errors.incrementAndGet();
+        }
+      });
+      worker.start();
+    }
+    for (Thread worker : workers) {
+      try {
+        worker.join();
+      } catch (InterruptedException e) {
+        errors.incrementAndGet();
+      }
+    }
+
+  } // protected void runAll (Thread[] workers)
+
+  /**
+   * Checks that no frame is left pinned, then flushes the pool and reads
+   * every page straight from disk.
+   *
+   * @param firstPid the first shared page
+   * @param counts what each page's counter should be
+   */
+  protected boolean checkDisk(PageId firstPid, int[] counts) {
+
+    boolean status = PASS;
+    if (Minibase.BufferManager.getNumUnpinned() != Minibase.BufferManager.getNumBuffers()) {
+      System.err.print("*** " + (Minibase.BufferManager.getNumBuffers()
+          - Minibase.BufferManager.getNumUnpinned()) + " frames are still pinned\n");
+      status = FAIL;
+    }
+
+    Minibase.BufferManager.flushAllPages();
+    if (Minibase.BufferManager.getNumDirty() != 0) {
+      System.err.print("*** " + Minibase.BufferManager.getNumDirty()
+          + " frames are still dirty after flushAllPages\n");
+      status = FAIL;
+    }
+
+    Page pg = new Page();
+    for (int i = 0; status == PASS && i < NUM_PAGES; i++) {
+      PageId pid = new PageId(firstPid.pid + i);
+      Minibase.DiskManager.read_page(pid, pg);
+      if (Convert.getIntValue(0, pg.getData()) != pid.pid + 99999
+          || Convert.getIntValue(4, pg.getData()) != counts[i]) {
+        System.err.print("*** Read wrong data back from disk for page " + pid.pid + "\n");
+        status = FAIL;
+      }
+    }
+    return status;
+
+  } // protected boolean checkDisk (PageId firstPid, int[] counts)
+
+  /**
+   * Threads pin random pages, check what is on them, and unpin them, some
+   * dirty, so that every eviction races with pins of the evicted page.
+   */
+  protected boolean test1() {
+
+    System.out.print("\n  Test 1 has " + NUM_THREADS + " threads pin "
+        + NUM_PAGES + " pages in a pool of " + POOL_SIZE + " frames:\n");
+
+    final PageId firstPid = createPages();
+    if (firstPid == null) {
+      return FAIL;
+    }
+
+    System.out.print("  - Pin, read and unpin random pages\n");
+    Thread[] workers = new Thread[NUM_THREADS];
+    for (int t = 0; t < NUM_THREADS; t++) {
+      final Random random = new Random(t);
+      workers[t] = new Thread("worker " + t) {
+        public void run() {
+          Page pg = new Page();
+          for (int op = 0; op < OPS_PER_THREAD; op++) {
+            PageId pid = new PageId(firstPid.pid + random.nextInt(NUM_PAGES));
+            Minibase.BufferManager.pinPage(pid, pg, PIN_DISKIO);
+            if (Convert.getIntValue(0, pg.getData()) != pid.pid + 99999) {
+              errors.incrementAndGet();
+            }
+            Minibase.BufferManager.unpinPage(pid, random.nextInt(4) == 0);
+          }
+        }
+      };
+    }
+    runAll(workers);
+
+    boolean status = PASS;
+    if (errors.get() != 0) {
+      System.err.print("*** " + errors.get() + " pins read wrong data or failed\n");
+      status = FAIL;
+    }
+
+    if (status == PASS) {
+      System.out.print("  - Check the pages on disk\n");
+      status = checkDisk(firstPid, new int[NUM_PAGES]);
+    }
+
+    if (status == PASS)
+      System.out.print("  Test 1 completed successfully.\n");
+
+    return status;
+
+  } // protected boolean test1 ()
+
+  /**
+   * Each thread owns some of the pages and keeps a counter on each; a pin
+   * that finds an older value than the thread last wrote means an update
+   * was lost, or a stale copy was read from disk.
+   */
+  protected boolean test2() {
+
+    System.out.print("\n  Test 2 has " + NUM_THREADS + " threads update "
+        + "their own pages while the others evict them:\n");
+
+    final PageId firstPid = createPages();
+    if (firstPid == null) {
+      return FAIL;
+    }
+
+    System.out.print("  - Pin, update and unpin random pages\n");
+    final int[] counts = new int[NUM_PAGES];
+    Thread[] workers = new Thread[NUM_THREADS];
+    for (int t = 0; t < NUM_THREADS; t++) {
+      final int me = t;
+      final Random random = new Random(t);
+      workers[t] = new Thread("worker " + t) {
+        public void run() {
+          Page pg = new Page();
+          for (int op = 0; op < OPS_PER_THREAD; op++) {
+            int i = random.nextInt(NUM_PAGES / NUM_THREADS) * NUM_THREADS + me;
+            PageId pid = new PageId(firstPid.pid + i);
+            Minibase.BufferManager.pinPage(pid, pg, PIN_DISKIO);
+            int count = Convert.getIntValue(4, pg.getData());
+            if (count != counts[i]) {
+              errors.incrementAndGet();
+            }
+            boolean dirty = random.nextInt(3) == 0;
+            if (dirty) {
+              counts[i] = count + 1;
+              Convert.setIntValue(count + 1, 4, pg.getData());
+            }
+            Minibase.BufferManager.unpinPage(pid, dirty);
+          }
+        }
+      };
+    }
+    runAll(workers);
+
+    boolean status = PASS;
+    if (errors.get() != 0) {
+      System.err.print("*** " + errors.get() + " pins found a lost update or failed\n");
+      status = FAIL;
+    }
+
+    if (status == PASS) {
+      System.out.print("  - Check the pages on disk\n");
+      status = checkDisk(firstPid, counts);
+    }
+
+    if (status == PASS)
+      System.out.print("  Test 2 completed successfully.\n");
+
+    return status;
+
+  } // protected boolean test2 ()
+
+} // class BMStressTest extends TestDriver
@@ -0,0 +1,302 @@
+package tests;
+
+import bufmgr.AccessHint;
+import bufmgr.BufMgr;
+import bufmgr.BufMgrMXBean;
+import bufmgr.BufferRing;
+import bufmgr.TraceReplayer;
+import diskmgr.DiskMgr;
+import global.Minibase;
+import global.Page;
+import global.PageId;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Tests for recording the calls made to the buffer manager and replaying
+ * them: a replay against the same policy and pool size must do what the
+ * buffer manager did live.
+ */
+class BMTraceTest extends TestDriver {
+
+  /** The display name of the test suite. */
+  private static final String TEST_NAME = "buffer manager trace tests";
+
+  /** Number of frames in the pool. */
+  private static final int POOL_SIZE = 32;
+
+  /** Number of pages used, many more than fit in the pool. */
+  private static final int NUM_PAGES = 500;
+
+  /**
+   * Test application entry point; runs all tests.
+   */
+  public static void main(String argv[]) {
+
+    System.out.println("\n" + "Running " + TEST_NAME + "...");
+    boolean status = PASS;
+
+    BMTraceTest btt = new BMTraceTest();
+    btt.BUF_SIZE = POOL_SIZE;
+    btt.create_minibase();
+    status &= btt.test1();
+
+    btt = new BMTraceTest();
+    btt.BUF_SIZE = POOL_SIZE;
+    btt.create_minibase();
+    status &= btt.test2();
+
+    btt = new BMTraceTest();
+    btt.BUF_SIZE = POOL_SIZE;
+    btt.create_minibase();
+    status &= btt.test3();
+
+    // display the final results
+    System.out.println();
+    if (status != PASS) {
+      System.out.println("Error(s) encountered during " + TEST_NAME + ".");
+    } else {
+      System.out.println("All " + TEST_NAME + " completed successfully!");
+    }
+
+  } // public static void main (String argv[])
+
+  /**
+   * Replaces the buffer manager of the new database with an empty one of
+   * the same policy and size, as a replay starts with, and starts recording
+   * a trace of it.
+   *
+   * @param trace where the trace goes
+   */
+  protected void startTrace(ByteArrayOutputStream trace) {
+
+    Minibase.BufferManager.flushAllPages();
+    Minibase.BufferManager = new BufMgr(POOL_SIZE, POOL_SIZE,
+        System.getProperty(BufMgr.REPLACER_PROPERTY, "Lru"));
+    Minibase.BufferManager.startTrace(trace);
+
+  } // protected void startTrace (ByteArrayOutputStream trace)
+
+  /**
+   * Reads a recorded trace and replays it with the policy and pool size of
+   * the buffer manager it was recorded on, and checks that the hits and
+   * misses are those the buffer manager had live.
+   *
+   * @param trace the trace
+   * @param hits the hits counted live while the trace was recorded
+   * @param misses the misses counted live while the trace was recorded
+   * @param rings the number of scan rings the trace should use
+   */
+  protected boolean checkReplay(byte[] trace, long hits, long misses, int rings) {
+
+    TraceReplayer replayer;
+    try {
+      replayer = new TraceReplayer(new ByteArrayInputStream(trace));
+    } catch (IOException exc) {
+      System.err.print("*** Could not read the trace back\n");
+      exc.printStackTrace();
+      return FAIL;
+    }
+    if (replayer.getNumRings() != rings) {
+      System.err.print("*** The trace uses " + replayer.getNumRings()
+          + " scan rings instead of " + rings + "\n");
+      return FAIL;
+    }
+
+    DiskMgr disk = Minibase.DiskManager;
+    BufMgrMXBean metrics = Minibase.BufferManager.getMetrics();
+    TraceReplayer.Result result = replayer.replay(metrics.getReplacer(), metrics.getNumBuffers());
+    if (Minibase.DiskManager != disk) {
+      System.err.print("*** The replay did not put the disk manager back\n");
+      return FAIL;
+    }
+    if (result.getHits() != hits || result.getMisses() != misses) {
+      System.err.print("*** The replay had " + result.getHits() + " hits and "
+          + result.getMisses() + " misses, live there were " + hits + " and "
+          + misses + "\n");
+      return FAIL;
+    }
+    return PASS;
+
+  } // protected boolean checkReplay (byte[] trace, long hits, long misses, int rings)
+
+  /**
+   * Records pins of a skewed mix of pages, some dirty, and new and freed
+   * pages, then replays the trace.
+   */
+  protected boolean test1() {
+
+    System.out.print("\n  Test 1 records and replays pins of a skewed mix of pages:\n");
+    boolean status = PASS;
+
+    ByteArrayOutputStream trace = new ByteArrayOutputStream();
+    startTrace(trace);
+
+    Page pg = new Page();
+    PageId firstPid;
+    try {
+      System.out.print("  - Allocate " + NUM_PAGES + " pages and pin them at random\n");
+      firstPid = Minibase.BufferManager.newPage(pg, NUM_PAGES);
+      Minibase.BufferManager.unpinPage(firstPid, UNPIN_DIRTY);
+      Random random = new Random(25);
+      for (int op = 0; op < 20000; op++) {
+        int i = random.nextInt(3) != 0 ? random.nextInt(POOL_SIZE) : random.nextInt(NUM_PAGES);
+        PageId pid = new PageId(firstPid.pid + i);
+        Minibase.BufferManager.pinPage(pid, pg, PIN_DISKIO);
+        Minibase.BufferManager.unpinPage(pid, random.nextInt(10) == 0);
+      }
+
+      System.out.print("  - Allocate and free a few more pages\n");
+      PageId pid = Minibase.BufferManager.newPage(pg, 3);
+      Minibase.BufferManager.unpinPage(pid, UNPIN_DIRTY);
+      Minibase.BufferManager.freePage(pid);
+    } catch (Exception e) {
+      System.err.print("*** Could not run the pages\n");
+      e.printStackTrace();
+      Minibase.BufferManager.stopTrace();
+      return FAIL;
+    }
+    Minibase.BufferManager.stopTrace();
+
+    System.out.print("  - Replay the trace\n");
+    BufMgrMXBean metrics = Minibase.BufferManager.getMetrics();
+    status = checkReplay(trace.toByteArray(), metrics.getHits(), metrics.getMisses(), 0);
+
+    if (status == PASS)
+      System.out.print("  Test 1 completed successfully.\n");
+
+    return status;
+
+  } // protected boolean test1 ()
+
+  /**
+   * Records hot pages pinned between scans, some through a scan ring and
+   * some with a sequential hint, which keep the scans from pushing the hot
+   * pages out; the replay must do the same, so hints and rings must be in
+   * the trace.
+   */
+  protected boolean test2() {
+
+    System.out.print("\n  Test 2 records and replays scans with a ring and with a hint:\n");
+    boolean status = PASS;
+
+    ByteArrayOutputStream trace = new ByteArrayOutputStream();
+    startTrace(trace);
+
+    Page pg = new Page();
+    PageId firstPid;
+    try {
+      firstPid = Minibase.BufferManager.newPage(pg, NUM_PAGES);
+      Minibase.BufferManager.unpinPage(firstPid, UNPIN_DIRTY);
+    } catch (Exception e) {
+      System.err.print("*** Could not allocate " + NUM_PAGES + " pages\n");
+      e.printStackTrace();
+      Minibase.BufferManager.stopTrace();
+      return FAIL;
+    }
+
+    System.out.print("  - Pin hot pages between scans of the other pages\n");
+    BufferRing ring = Minibase.BufferManager.getScanRing(NUM_PAGES);
+    for (int pass = 0; pass < 6; pass++) {
+      for (int i = 0; i < POOL_SIZE / 2; i++) {
+        PageId pid = new PageId(firstPid.pid + i);
+        Minibase.BufferManager.pinPage(pid, pg, PIN_DISKIO);
+        Minibase.BufferManager.unpinPage(pid, UNPIN_CLEAN);
+      }
+      for (int i = POOL_SIZE / 2; i < NUM_PAGES; i++) {
+        PageId pid = new PageId(firstPid.pid + i);
+        if (pass % 2 == 0) {
+          Minibase.BufferManager.pinPage(pid, pg, PIN_DISKIO, ring);
+        } else {
+          Minibase.BufferManager.pinPage(pid, pg, PIN_DISKIO, AccessHint.SEQUENTIAL);
+        }
+        Minibase.BufferManager.unpinPage(pid, UNPIN_CLEAN);
+      }
+    }
+    Minibase.BufferManager.stopTrace();
+
+    BufMgrMXBean metrics = Minibase.BufferManager.getMetrics();
+    long liveHits = metrics.getHits();
+    if (liveHits < 5 * (POOL_SIZE / 2)) {
+      System.err.print("*** The scans pushed the hot pages out; only " + liveHits + " hits\n");
+      status = FAIL;
+    }
+
+    if (status == PASS) {
+      System.out.print("  - Replay the trace\n");
+      status = checkReplay(trace.toByteArray(), liveHits, metrics.getMisses(), 1);
+    }
+
+    if (status == PASS)
+      System.out.print("  Test 2 completed successfully.\n");
+
+    return status;
+
+  } // protected boolean test2 ()
+
+  /**
+   * Reads a stream that is not a trace, and one cut short, and replays a
+   * trace with a policy that does not exist; all must be refused, and the
+   * disk manager must be put back after the replay.
+   */
+  protected boolean test3() {
+
+    System.out.print("\n  Test 3 reads bad traces:\n");
+    boolean status = PASS;
+
+    System.out.print("  - Record a short trace\n");
+    ByteArrayOutputStream trace = new ByteArrayOutputStream();
+    Minibase.BufferManager.startTrace(trace);
+    Page pg = new Page();
+    PageId pid = Minibase.BufferManager.newPage(pg, 4);
+    Minibase.BufferManager.unpinPage(pid, UNPIN_DIRTY);
+    Minibase.BufferManager.freePage(pid);
+    Minibase.BufferManager.stopTrace();
+    byte[] good = trace.toByteArray();
+
+    String[] names = { "a stream that is not a trace", "a trace cut short" };
+    byte[][] bad = { "not a trace".getBytes(), Arrays.copyOf(good, good.length - 1) };
+    for (int k = 0; status == PASS && k < bad.length; k++) {
+      System.out.print("  - Read " + names[k] + "\n");
+      try {
+        new TraceReplayer(new ByteArrayInputStream(bad[k]));
+        System.err.print("*** Reading a bad trace did not fail\n");
+        status = FAIL;
+      } catch (IllegalArgumentException exc) {
+        System.out.print("  --> Failed as expected \n");
+      } catch (IOException exc) {
+        System.err.print("*** Reading a bad trace threw an IOException\n");
+        status = FAIL;
+      }
+    }
+
+    if (status == PASS) {
+      System.out.print("  - Replay with a policy that does not exist\n");
+      DiskMgr disk = Minibase.DiskManager;
+      try {
+        new TraceReplayer(new ByteArrayInputStream(good)).replay("Nope", POOL_SIZE);
+        System.err.print("*** Replaying with an unknown policy did not fail\n");
+        status = FAIL;
+      } catch (IllegalArgumentException exc) {
+        System.out.print("  --> Failed as expected \n");
+      } catch (IOException exc) {
+        System.err.print("*** Could not read the trace back\n");
+        status = FAIL;
+      }
+      if (Minibase.DiskManager != disk) {
+        System.err.print("*** The replay did not put the disk manager back\n");
+        status = FAIL;
+      }
+    }
+
+    if (status == PASS)
+      System.out.print("  Test 3 completed successfully.\n");
+
+    return status;
+
+  } // protected boolean test3 ()
+
+} // class BMTraceTest extends TestDriver